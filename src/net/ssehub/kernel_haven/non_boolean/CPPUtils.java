@@ -15,6 +15,10 @@
  */
 package net.ssehub.kernel_haven.non_boolean;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
 /**
  * Utility functions to handle CPP statements.
  * @author El-Sharkawy
@@ -29,17 +33,67 @@ public class CPPUtils {
     
     /**
      * Checks if a line is a CPP <tt>if</tt> or <tt>elif</tt> line, but not a <tt>ifdef</tt> or <tt>ifndef</tt> line.
+     * Whitespace before and after the <tt>#</tt> is allowed, see {@link CppDirective#classify(CharSequence)}.
      * @param line The complete line to test.
      * @return <tt>true</tt> if the given line is a CPP <tt>if</tt> or <tt>elif</tt> line
      */
     public static boolean isIfOrElifStatement(String line) {
-        boolean result = false;
+        CppDirective directive = CppDirective.classify(line);
+        return directive == CppDirective.IF || directive == CppDirective.ELIF;
+    }
+    
+    /**
+     * Scans the raw bytes of a source file and checks whether the {@link NonBooleanPreperation} would write it
+     * unchanged. This is the case if the file contains no <tt>if</tt>, <tt>elif</tt> or <tt>error</tt> directive (as
+     * classified by {@link CppDirective#classify(byte[], int, int)}), uses only <tt>\n</tt> as line terminator, and is
+     * either empty or ends with a line terminator.
+     * 
+     * @param in The contents of the file to scan. Is not closed by this method.
+     * @return <tt>true</tt> if the file can be copied byte by byte; <tt>false</tt> if it has to be rewritten.
+     * 
+     * @throws IOException If reading the input fails.
+     */
+    public static boolean canPassThrough(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        // the bytes of the current (not yet terminated) line are kept at the start of the buffer
+        int length = 0;
+        boolean result = true;
         
-        String trimmedLine = line.trim();
-        result = (trimmedLine.startsWith("#if") || line.startsWith("#elif"))
-                 && !trimmedLine.startsWith("#ifdef")
-                 && !trimmedLine.startsWith("#ifndef");            
+        int read = in.read(buffer, 0, buffer.length);
+        while (read != -1 && result) {
+            int end = length + read;
+            int lineStart = 0;
+            for (int i = length; i < end && result; i++) {
+                if (buffer[i] == '\r') {
+                    result = false;
+                } else if (buffer[i] == '\n') {
+                    result = !isRelevantDirective(CppDirective.classify(buffer, lineStart, i));
+                    lineStart = i + 1;
+                }
+            }
+            
+            length = end - lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, length);
+            if (length == buffer.length) {
+                // a very long line
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            
+            read = in.read(buffer, length, buffer.length - length);
+        }
         
-        return result;
+        // an empty file, or the last line is terminated
+        return result && length == 0;
+    }
+    
+    /**
+     * Checks whether the given preprocessor directive is relevant for the {@link NonBooleanPreperation}, i.e. whether
+     * a file with it may be changed by the preparation.
+     * 
+     * @param directive The directive of a line.
+     * @return <tt>true</tt> for <tt>if</tt>, <tt>elif</tt> and <tt>error</tt>.
+     */
+    private static boolean isRelevantDirective(CppDirective directive) {
+        return directive == CppDirective.IF || directive == CppDirective.ELIF || directive == CppDirective.ERROR;
     }
 }
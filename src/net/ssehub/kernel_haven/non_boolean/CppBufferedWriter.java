@@ -18,12 +18,18 @@ package net.ssehub.kernel_haven.non_boolean;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.List;
 
 /**
  * A special writer, which will automatically omit all preprocessor blocks containing an <tt>&#35;error</tt> statement.
+ * <p>
+ * Each open preprocessor block has its own buffer on a stack. Lines outside of any block are written immediately;
+ * lines inside a block are buffered until the block is closed, since a later <tt>&#35;error</tt> may still remove
+ * them. Removing a block only discards the buffer of that block.
+ * 
  * @author El-Sharkawy
  *
  */
@@ -33,51 +39,113 @@ public class CppBufferedWriter extends Writer {
         + " ********************************************/";
 
     /**
-     * Stores a preprocessor line and the nesting depth of it.
-     * @author El-Sharkawy
-     *
+     * An open preprocessor block (<tt>if, elif, else</tt> up to the <tt>endif</tt>).
      */
-    private class CppLine {
-        private String line;
-        private String effectiveLine;
-        private int nestingDepth;
-        private boolean cppBlock;
+    private static final class Block {
         
         /**
-         * Sole constructor.
-         * @param line The cpp line
-         * @param cppBlock <tt>true</tt> if an c preprocessor <tt>if, else, elif, endif</tt>.
-         * @param nestingDepth The nesting of the cpp statement within all cpp blocks.
+         * The lines of this block that are not removed (yet), each terminated by a line break.
          */
-        private CppLine(String line, boolean cppBlock, int nestingDepth) {
-            this(line, line, cppBlock, nestingDepth);
+        private StringBuilder buffer = new StringBuilder();
+        
+        /**
+         * The index in {@link #buffer} where the current branch starts. Everything from here is discarded if the
+         * current branch contains an <tt>&#35;error</tt>.
+         */
+        private int branchStart;
+        
+        /**
+         * The condition of the current branch; <code>null</code> for an <tt>else</tt> branch.
+         */
+        private String branchCondition;
+        
+        /**
+         * Whether a branch of this block was kept, i.e. whether {@link #buffer} contains an opening <tt>if</tt>.
+         */
+        private boolean headKept;
+        
+        /**
+         * Whether the current branch contains an <tt>&#35;error</tt>; all further lines of the branch are omitted.
+         */
+        private boolean skipping;
+        
+        /**
+         * The nesting depth of blocks inside of the current branch, while {@link #skipping}.
+         */
+        private int skippedNesting;
+        
+        /**
+         * The conditions of the branches that were removed directly before the current branch. The current branch is
+         * rewritten to exclude these.
+         */
+        private List<String> removedConditions = new ArrayList<>(2);
+        
+        /**
+         * Whether this block contains code or kept nested blocks.
+         */
+        private boolean hasContent;
+        
+        /**
+         * Whether this block contains nested blocks that were removed.
+         */
+        private boolean hasRemovedBlocks;
+        
+        /**
+         * Starts a new branch at the end of the buffer. If the previous branch was removed, the new branch starts at
+         * the {@link CppBufferedWriter#REPLACEMENT} of the removed branch, so that this is replaced if the new branch
+         * is removed, too; also, the removed conditions are kept so that they are excluded in the next branch.
+         * 
+         * @param condition The condition of the new branch; <code>null</code> for an <tt>else</tt> branch.
+         */
+        private void startBranch(String condition) {
+            if (!skipping) {
+                branchStart = buffer.length();
+                removedConditions.clear();
+            }
+            branchCondition = condition;
+            skipping = false;
+            skippedNesting = 0;
         }
         
         /**
-         * Sole constructor.
-         * @param line The cpp line
-         * @param effectiveLine Rewritten cpp line if previous line has been removed.
-         * @param cppBlock <tt>true</tt> if an c preprocessor <tt>if, else, elif, endif</tt>.
-         * @param nestingDepth The nesting of the cpp statement within all cpp blocks.
+         * Removes the current branch, because it contains an <tt>&#35;error</tt>.
          */
-        private CppLine(String line, String effectiveLine, boolean cppBlock, int nestingDepth) {
-            this.line = line;
-            this.effectiveLine = effectiveLine;
-            this.nestingDepth = nestingDepth;
-            this.cppBlock = cppBlock;
+        private void removeBranch() {
+            buffer.setLength(branchStart);
+            buffer.append(REPLACEMENT).append('\n');
+            if (branchStart == 0) {
+                // the opening if is removed; the next branch needs to be rewritten as the opening if
+                headKept = false;
+            }
+            if (branchCondition != null) {
+                removedConditions.add(branchCondition);
+            }
+            skipping = true;
+            skippedNesting = 0;
         }
         
-        @Override
-        public String toString() {
-            return nestingDepth + ": " + line + "\n";
+        /**
+         * Concatenates all removed conditions via a conjunction.
+         * <p>
+         * <b>Attention:</b> check that {@link #removedConditions} is not empty before!
+         * 
+         * @return The composed, removed conditions.
+         */
+        private String getRemovedConditions() {
+            StringBuilder result = new StringBuilder();
+            result.append(removedConditions.get(0).trim());
+            for (int i = 1; i < removedConditions.size(); i++) {
+                result.append(" && ");
+                result.append(removedConditions.get(i).trim());
+            }
+            
+            return result.toString();
         }
+        
     }
     
-    private List<CppLine> cppLines = new ArrayList<>(500);
+    private Deque<Block> blocks = new ArrayDeque<>();
     private BufferedWriter out;
-    private int nestingDepth = 0;
-    private int skipAtNesting = -1;
-    private List<String> removedConditions = new ArrayList<>(5);
     
     /**
      * Sole constructor for this class.
@@ -94,206 +162,172 @@ public class CppBufferedWriter extends Writer {
      */
     @Override
     public void write(String line) throws IOException {
-        String trimedLine = line.trim().toLowerCase();
-        if (trimedLine.startsWith("#if")) {
-            // if, ifndef, ifdef
-            nestingDepth++;
-            cppLines.add(new CppLine(line, true, nestingDepth));
-        } else if (trimedLine.startsWith("#endif")) {
-            // endif
-            boolean added = false;
-            if (skipAtNesting == -1 || skipAtNesting > nestingDepth) {
-                added = true;
-                cppLines.add(new CppLine(line, true, nestingDepth));
+        CppDirective directive = CppDirective.classify(line);
+        boolean elseBranch = directive == CppDirective.ELSE || directive == CppDirective.ELIF;
+        Block block = blocks.peek();
+        
+        if (block != null && block.skipping) {
+            // inside of a removed branch: only track the nesting to find the end of the branch
+            if (directive.opensBlock()) {
+                block.skippedNesting++;
+            } else if (block.skippedNesting > 0) {
+                if (directive == CppDirective.ENDIF) {
+                    block.skippedNesting--;
+                }
+            } else if (directive == CppDirective.ENDIF) {
+                endBlock(line);
+            } else if (elseBranch) {
+                startElseBranch(block, line, directive);
             }
-            nestingDepth--;
             
-            // Check if this CPP block has contained only (a) CPP block(s), which was/were removed
-            if (skipAtNesting >= 0 && added) {
-                check(nestingDepth + 1);
-            }
+        } else if (directive.opensBlock()) {
+            // if, ifndef, ifdef
+            Block newBlock = new Block();
+            newBlock.startBranch(getCondition(line, directive));
+            newBlock.headKept = true;
+            newBlock.buffer.append(line).append('\n');
+            blocks.push(newBlock);
             
-            // Write code lines if we reached top level of file
-            if (nestingDepth <= 0) {
-                flush();
-                nestingDepth = 0;
-                skipAtNesting = -1;
-            }
-        } else if (trimedLine.startsWith("#el")) {
-            // else, elif
-            if (skipAtNesting == -1 || skipAtNesting > nestingDepth) {
-                // Nothing to remove, continue
-                cppLines.add(new CppLine(line, true, nestingDepth));
-            } else {
-                if (!removedConditions.isEmpty()) {
-                    // Rewrite else/elif and check if we should also delete this block or rewrite it.
-                    StringBuilder newLine = new StringBuilder();
-                    if (trimedLine.startsWith("#elif")) {
-                        int start = line.toLowerCase().indexOf("#elif") + 5;
-                        newLine.append("#if (!(");
-                        newLine.append(getRemovedConditions());
-                        newLine.append(") && ");
-                        // Attention: condition must not be transformed to lower case
-                        newLine.append(line.substring(start).trim());
-                        newLine.append(")");
-                    } else {
-                        newLine.append("#if !(");
-                        newLine.append(getRemovedConditions());
-                        newLine.append(")");
-                    }
-                    cppLines.add(new CppLine(line, newLine.toString(), true, nestingDepth));
-                    skipAtNesting = -1;
-                }
-            }
-        } else if (trimedLine.startsWith("#error")) {
+        } else if (directive == CppDirective.ENDIF && block != null) {
+            endBlock(line);
+            
+        } else if (elseBranch && block != null) {
+            startElseBranch(block, line, directive);
+            
+        } else if (directive == CppDirective.ERROR) {
             // Delete this statement and surrounding block
-            removeCppBlock(nestingDepth);
-            skipAtNesting = nestingDepth;
-        } else {
-            if (nestingDepth > 0) {
-                // C code or other cpp like define, needs to be stored in list to ensure ordering of output
-                cppLines.add(new CppLine(line, false, nestingDepth));
-            } else {
-                out.write(line);
-                out.write("\n");
+            if (block != null) {
+                block.removeBranch();
             }
+            
+        } else if (block != null) {
+            // C code or other cpp like define, needs to be buffered as the block may still be removed
+            block.buffer.append(line).append('\n');
+            block.hasContent = true;
+            
+        } else {
+            out.write(line);
+            out.write("\n");
         }
     }
-
+    
     /**
-     * Removes a cached CPP block at the specified nesting level.
-     * @param nestingDepth The nesting level of the block to remove.
+     * Handles an <tt>else</tt> or <tt>elif</tt> line. If the previous branches were removed, the line is rewritten
+     * to exclude the conditions of the removed branches.
+     * 
+     * @param block The current block.
+     * @param line The <tt>else</tt> or <tt>elif</tt> line.
+     * @param directive The directive of the line, either {@link CppDirective#ELSE} or {@link CppDirective#ELIF}.
      */
-    private void removeCppBlock(int nestingDepth) {
-        Iterator<CppLine> itr = cppLines.iterator();
-        int firstRemovalIndex = -1;
-        int index = -1;
-        while (itr.hasNext()) {
-            index++;
+    private void startElseBranch(Block block, String line, CppDirective directive) {
+        boolean elif = directive == CppDirective.ELIF;
+        block.startBranch(elif ? getCondition(line, directive) : null);
+        boolean wasHeadKept = block.headKept;
+        block.headKept = true;
+        
+        if (block.removedConditions.isEmpty()) {
+            // Nothing removed, continue
+            block.buffer.append(line).append('\n');
             
-            CppLine currentElement = itr.next();
-            if (currentElement.nestingDepth >= nestingDepth) {
-                itr.remove();
-                
-                // Store the condition to rewrite else/elif elements if necessary
-                if (currentElement.cppBlock) {
-                    String function = null;
-                    String line = currentElement.line.toLowerCase();
-                    int start = line.indexOf("#ifndef");
-                    int offset = 0;
-                    if (-1 == start) {
-                        start = line.indexOf("#ifdef");
-                        if (-1 != start) {
-                            // length of #ifdef
-                            offset += 6;
-                            function = "defined(";
-                        }
-                    } else {
-                        // length of #ifndef
-                        offset += 7;
-                        function = "!defined(";
-                    }
-                    if (-1 == start) {
-                        start = line.indexOf("#if");
-                        if (-1 != start) {
-                            // length of #if
-                            offset += 3;
-                        }
-                    }
-                    if (-1 == start) {
-                        start = line.indexOf("#elif");
-                        if (-1 != start) {
-                            // length of #elif
-                            offset += 5;
-                        }
-                    }
-                    
-                    // Extract condition
-                    if (-1 != start) {
-                        String condition = currentElement.line.substring(start + offset).trim();
-                        if (null != function) {
-                            removedConditions.add(function + condition + ")");
-                        } else {
-                            removedConditions.add(condition);
-                        }
-                    }
-                }
-                
-                if (-1 == firstRemovalIndex) {
-                    // Mark that we have removed at least one element at this index
-                    firstRemovalIndex = index;
-                }
+        } else {
+            // Rewrite else/elif; the first kept branch becomes the opening if
+            StringBuilder newLine = new StringBuilder();
+            newLine.append(wasHeadKept ? "#elif " : "#if ");
+            if (elif) {
+                newLine.append("(!(");
+                newLine.append(block.getRemovedConditions());
+                newLine.append(") && ");
+                // Attention: condition must not be transformed to lower case
+                newLine.append(block.branchCondition);
+                newLine.append(")");
+            } else {
+                newLine.append("!(");
+                newLine.append(block.getRemovedConditions());
+                newLine.append(")");
             }
-        }
-        
-        if (-1 != firstRemovalIndex) {
-            // Added as CPP block = true, to allow removal if parent block is removed and also replaced by this string
-            cppLines.add(firstRemovalIndex, new CppLine(REPLACEMENT, true, nestingDepth));
+            block.buffer.append(newLine).append('\n');
         }
     }
     
     /**
-     * Checks (and removes) whether CPP blocks on the specified level should be removed. This is the case if a CPP block
-     * contained an error statement or only other CPP blocks which have been removed for this reason.
-     * @param nestingToCheck The nesting level of the block to check (and remove).
+     * Handles an <tt>endif</tt> line: closes the current block and hands its lines to the parent block (or writes
+     * them, if there is no parent). A block that only contains removed blocks is removed, too.
+     * 
+     * @param line The <tt>endif</tt> line.
+     * 
+     * @throws IOException If writing the output is not possible.
      */
-    private void check(int nestingToCheck) {
-        boolean shouldBeRemoved = false;
+    private void endBlock(String line) throws IOException {
+        Block block = blocks.pop();
         
-        Iterator<CppLine> itr = cppLines.iterator();
-        while (itr.hasNext()) {
-            CppLine cppLine = itr.next();
-            if (cppLine.nestingDepth == nestingToCheck) {
-                shouldBeRemoved = cppLine.cppBlock;
-                
-                if (!shouldBeRemoved) {
-                    break;
-                }
-            }
+        boolean kept = block.headKept;
+        if (kept && !block.hasContent && block.hasRemovedBlocks) {
+            // This CPP block has contained only (a) CPP block(s), which was/were removed
+            kept = false;
+            block.buffer.setLength(0);
+            block.buffer.append(REPLACEMENT).append('\n');
+        } else if (kept) {
+            block.buffer.append(line).append('\n');
         }
         
-        if (shouldBeRemoved) {
-            removeCppBlock(nestingToCheck);
+        Block parent = blocks.peek();
+        if (parent != null) {
+            parent.buffer.append(block.buffer);
+            if (kept) {
+                parent.hasContent = true;
+            } else {
+                parent.hasRemovedBlocks = true;
+            }
+        } else {
+            out.append(block.buffer);
         }
     }
     
     /**
-     * Concatenates all removed CPP conditions via a conjunction.
-     * <p>
-     * <b>Attention:</b> check that {@link #removedConditions} is not empty before!
-     * @return The composed, removed conditions.
+     * Extracts the condition of an <tt>if, ifdef, ifndef</tt> or <tt>elif</tt> line.
+     * 
+     * @param line The line.
+     * @param directive The directive of the line.
+     * 
+     * @return The condition; <tt>ifdef</tt> and <tt>ifndef</tt> are converted to <tt>defined()</tt> calls.
      */
-    private String getRemovedConditions() {
-        StringBuilder result = new StringBuilder();
-        result.append(removedConditions.get(0).trim());
-        for (int i = 1; i < removedConditions.size(); i++) {
-            result.append(" && ");
-            result.append(removedConditions.get(i).trim());
+    private static String getCondition(String line, CppDirective directive) {
+        String function = null;
+        if (directive == CppDirective.IFNDEF) {
+            function = "!defined(";
+        } else if (directive == CppDirective.IFDEF) {
+            function = "defined(";
         }
         
-        return result.toString();
+        String condition = line.substring(directive.getEndOfKeyword(line)).trim();
+        if (null != function) {
+            condition = function + condition + ")";
+        }
+        return condition;
     }
 
     @Override
     public void close() throws IOException {
-        flush();
+        // write unterminated blocks as they are
+        while (!blocks.isEmpty()) {
+            Block block = blocks.pop();
+            Block parent = blocks.peek();
+            if (parent != null) {
+                parent.buffer.append(block.buffer);
+            } else {
+                out.append(block.buffer);
+            }
+        }
         out.close();
     }
     
     /**
-     * Flushes the currently processed lines.
+     * Flushes the underlying writer. Lines inside of open blocks are kept in the buffers, since the blocks may still
+     * be removed.
      * @throws IOException If writing the output is not possible.
      */
     @Override
     public void flush() throws IOException {
-        if (!cppLines.isEmpty()) {
-            for (CppLine cppLine : cppLines) {
-                out.write(cppLine.effectiveLine);
-                out.write("\n");
-            }
-        }
-        removedConditions.clear();
-        cppLines.clear();
         out.flush();
     }
 
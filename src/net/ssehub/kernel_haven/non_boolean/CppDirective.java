@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+/**
+ * The C preprocessor directives that are relevant for the non boolean preparation. {@link #classify(CharSequence)}
+ * determines the directive of a line without allocating any objects. Whitespace is allowed before the <tt>#</tt> and
+ * between the <tt>#</tt> and the keyword; the keyword is case-sensitive, as in the C preprocessor.
+ *
+ * @author Adam
+ */
+public enum CppDirective {
+    
+    IF("if"),
+    
+    IFDEF("ifdef"),
+    
+    IFNDEF("ifndef"),
+    
+    ELIF("elif"),
+    
+    ELSE("else"),
+    
+    ENDIF("endif"),
+    
+    ERROR("error"),
+    
+    /**
+     * Any other line, including other preprocessor directives like <tt>&#35;define</tt>.
+     */
+    OTHER(null);
+    
+    private static final CppDirective[] DIRECTIVES = {IF, IFDEF, IFNDEF, ELIF, ELSE, ENDIF, ERROR};
+    
+    private final String keyword;
+    
+    /**
+     * Creates a directive.
+     * 
+     * @param keyword The keyword after the <tt>#</tt>; <code>null</code> for {@link #OTHER}.
+     */
+    private CppDirective(String keyword) {
+        this.keyword = keyword;
+    }
+    
+    /**
+     * Returns the keyword of this directive.
+     * 
+     * @return The keyword after the <tt>#</tt>, e.g. <tt>ifdef</tt>; <code>null</code> for {@link #OTHER}.
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+    
+    /**
+     * Checks whether this directive opens a new block, i.e. is <tt>if</tt>, <tt>ifdef</tt> or <tt>ifndef</tt>.
+     * 
+     * @return Whether this directive opens a new block.
+     */
+    public boolean opensBlock() {
+        return this == IF || this == IFDEF || this == IFNDEF;
+    }
+    
+    /**
+     * Determines the directive of the given line.
+     * 
+     * @param line The line to classify.
+     * 
+     * @return The directive of the line; {@link #OTHER} if it is not one of the relevant directives.
+     */
+    public static CppDirective classify(CharSequence line) {
+        return classify(line, 0, line.length());
+    }
+    
+    /**
+     * Determines the directive of the line in the given range of characters.
+     * 
+     * @param line The characters containing the line.
+     * @param start The index of the first character of the line.
+     * @param end The index after the last character of the line.
+     * 
+     * @return The directive of the line; {@link #OTHER} if it is not one of the relevant directives.
+     */
+    public static CppDirective classify(CharSequence line, int start, int end) {
+        int i = start;
+        while (i < end && line.charAt(i) <= ' ') {
+            i++;
+        }
+        
+        CppDirective result = OTHER;
+        if (i < end && line.charAt(i) == '#') {
+            i++;
+            while (i < end && line.charAt(i) <= ' ') {
+                i++;
+            }
+            
+            int keywordStart = i;
+            while (i < end && isIdentifierPart(line.charAt(i))) {
+                i++;
+            }
+            
+            for (int d = 0; d < DIRECTIVES.length && result == OTHER; d++) {
+                String keyword = DIRECTIVES[d].keyword;
+                boolean matches = keyword.length() == i - keywordStart;
+                for (int j = 0; matches && j < keyword.length(); j++) {
+                    matches = line.charAt(keywordStart + j) == keyword.charAt(j);
+                }
+                if (matches) {
+                    result = DIRECTIVES[d];
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Determines the directive of the line in the given range of bytes. The bytes are interpreted as an ASCII
+     * compatible encoding.
+     * 
+     * @param line The bytes containing the line.
+     * @param start The index of the first byte of the line.
+     * @param end The index after the last byte of the line (excluding the line terminator).
+     * 
+     * @return The directive of the line; {@link #OTHER} if it is not one of the relevant directives.
+     */
+    public static CppDirective classify(byte[] line, int start, int end) {
+        int i = start;
+        while (i < end && (line[i] & 0xFF) <= ' ') {
+            i++;
+        }
+        
+        CppDirective result = OTHER;
+        if (i < end && line[i] == '#') {
+            i++;
+            while (i < end && (line[i] & 0xFF) <= ' ') {
+                i++;
+            }
+            
+            int keywordStart = i;
+            while (i < end && isIdentifierPart((char) (line[i] & 0xFF))) {
+                i++;
+            }
+            
+            for (int d = 0; d < DIRECTIVES.length && result == OTHER; d++) {
+                String keyword = DIRECTIVES[d].keyword;
+                boolean matches = keyword.length() == i - keywordStart;
+                for (int j = 0; matches && j < keyword.length(); j++) {
+                    matches = line[keywordStart + j] == keyword.charAt(j);
+                }
+                if (matches) {
+                    result = DIRECTIVES[d];
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the index directly after the keyword of the directive in the given line, i.e. the start of the
+     * condition of an <tt>if</tt> or <tt>elif</tt>.
+     * 
+     * @param line A line for which {@link #classify(CharSequence)} returned this directive.
+     * 
+     * @return The index after the keyword.
+     */
+    public int getEndOfKeyword(CharSequence line) {
+        int i = 0;
+        while (line.charAt(i) != '#') {
+            i++;
+        }
+        i++;
+        while (line.charAt(i) <= ' ') {
+            i++;
+        }
+        return i + keyword.length();
+    }
+    
+    /**
+     * Checks whether the given character may be part of a C identifier.
+     * 
+     * @param c The character to check.
+     * 
+     * @return Whether the character is an ASCII letter, digit or underscore.
+     */
+    private static boolean isIdentifierPart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+    
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+/**
+ * Defines how the {@link NonBooleanPreperation} distributes the files of the source tree to threads.
+ *
+ * @author Adam
+ */
+public enum ExecutionMode {
+    
+    /**
+     * Uses a work-stealing thread pool with {@link NonBooleanSettings#NUMBER_OF_THREADS} threads; if this is 1, all
+     * files are processed in the calling thread. Best suited if processing the files is bound by the CPU.
+     */
+    THREAD_POOL,
+    
+    /**
+     * Processes each file in its own virtual thread, with at most {@link NonBooleanSettings#MAX_OPEN_FILES} files
+     * at once. Best suited for file systems with high latency, e.g. network file systems. Virtual threads require
+     * Java 21; on older versions, a fixed pool of {@link NonBooleanSettings#MAX_OPEN_FILES} platform threads is used
+     * instead.
+     */
+    VIRTUAL_THREADS,
+    
+    /**
+     * Splits the processing of the files into three stages that run at the same time: one thread reads the files,
+     * {@link NonBooleanSettings#NUMBER_OF_THREADS} threads do the replacements, and one thread writes the results.
+     * The stages are connected by queues with a capacity of {@link NonBooleanSettings#QUEUE_CAPACITY} files.
+     */
+    PIPELINE,
+    
+}
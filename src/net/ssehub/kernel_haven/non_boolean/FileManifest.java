@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ssehub.kernel_haven.util.Logger;
+
+/**
+ * A manifest of all files that were copied by the {@link NonBooleanPreperation}. This is stored in the destination
+ * directory, so that a later run can only process the files that changed since the previous run. For each file, the
+ * size, last modification time and a hash of the contents are stored. Additionally, a fingerprint of the
+ * {@link NonBooleanVariable}s, constants and all other settings that affect the output is stored; if these change,
+ * all files need to be processed again.
+ * <p>
+ * Entries may be added by multiple threads at the same time.
+ *
+ * @author Adam
+ */
+class FileManifest {
+    
+    static final String FILE_NAME = ".non_boolean_manifest";
+    
+    private static final Logger LOGGER = Logger.get();
+    
+    private static final String HEADER = "# KernelHaven NonBooleanPreparation manifest v1";
+    
+    private static final String HASH_ALGORITHM = "SHA-256";
+    
+    /**
+     * The state of a single file at the time it was copied.
+     */
+    static final class Entry {
+        
+        private long size;
+        
+        private long lastModified;
+        
+        private String hash;
+        
+        /**
+         * Creates an entry.
+         *
+         * @param size The size of the file, in bytes.
+         * @param lastModified The last modification time of the file.
+         * @param hash The hash of the file contents.
+         */
+        Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+        
+        /**
+         * Creates the entry for the given file. If the size and modification time of the file are the same as in the
+         * previous entry, then the hash of the previous entry is re-used instead of reading the file.
+         *
+         * @param file The file to create the entry for.
+         * @param previous The entry of this file from the previous run. May be <code>null</code>.
+         *
+         * @return The entry for the current state of the file.
+         *
+         * @throws IOException If reading the file fails.
+         */
+        static Entry of(File file, Entry previous) throws IOException {
+            return of(file, file.length(), file.lastModified(), previous);
+        }
+        
+        /**
+         * Creates the entry for the given file, with an already known size and modification time.
+         *
+         * @param file The file to create the entry for.
+         * @param size The size of the file, in bytes.
+         * @param lastModified The last modification time of the file.
+         * @param previous The entry of this file from the previous run. May be <code>null</code>.
+         *
+         * @return The entry for the current state of the file.
+         *
+         * @throws IOException If reading the file fails.
+         */
+        static Entry of(File file, long size, long lastModified, Entry previous) throws IOException {
+            Entry result;
+            if (previous != null && previous.size == size && previous.lastModified == lastModified) {
+                result = previous;
+            } else {
+                result = new Entry(size, lastModified, hashFile(file));
+            }
+            return result;
+        }
+        
+        /**
+         * Whether the file of this entry has the same contents as the file of the other entry.
+         *
+         * @param other The other entry. May be <code>null</code>.
+         *
+         * @return Whether both entries have the same hash.
+         */
+        boolean hasSameContent(Entry other) {
+            return other != null && size == other.size && hash.equals(other.hash);
+        }
+        
+    }
+    
+    private String fingerprint;
+    
+    private Map<String, Entry> entries;
+    
+    /**
+     * Creates an empty manifest.
+     *
+     * @param fingerprint The fingerprint of the variables, constants and settings, see
+     *      {@link #createFingerprint(Map, Map, Map)}.
+     */
+    FileManifest(String fingerprint) {
+        this.fingerprint = fingerprint;
+        this.entries = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Returns the fingerprint of the variables, constants and settings that were used for the files in this
+     * manifest.
+     *
+     * @return The fingerprint.
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Returns the entry for the given file.
+     *
+     * @param path The path of the file, relative to the source tree.
+     *
+     * @return The entry for the file, or <code>null</code> if this manifest does not contain it.
+     */
+    Entry get(String path) {
+        return entries.get(path);
+    }
+    
+    /**
+     * Adds or replaces the entry for the given file.
+     *
+     * @param path The path of the file, relative to the source tree.
+     * @param entry The entry for the file.
+     */
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+    
+    /**
+     * Returns the paths of all files in this manifest.
+     *
+     * @return The paths of all files, relative to the source tree.
+     */
+    Set<String> getPaths() {
+        return entries.keySet();
+    }
+    
+    /**
+     * Writes this manifest into the given destination directory. The entries are sorted by their path.
+     *
+     * @param destination The destination directory of the copied source tree.
+     *
+     * @throws IOException If writing the manifest fails.
+     */
+    void write(File destination) throws IOException {
+        File tmpFile = new File(destination, FILE_NAME + ".tmp");
+        
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmpFile.toPath()),
+                StandardCharsets.UTF_8))) {
+            
+            out.write(HEADER + "\n");
+            out.write(fingerprint + "\n");
+            
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                Entry e = entry.getValue();
+                out.write(e.size + "\t" + e.lastModified + "\t" + e.hash + "\t" + entry.getKey() + "\n");
+            }
+        }
+        
+        Files.move(tmpFile.toPath(), new File(destination, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Reads the manifest in the given destination directory.
+     *
+     * @param destination The destination directory of the copied source tree.
+     *
+     * @return The manifest, or <code>null</code> if there is no (valid) manifest in the directory.
+     */
+    static FileManifest read(File destination) {
+        File file = new File(destination, FILE_NAME);
+        FileManifest result = null;
+        
+        if (file.isFile()) {
+            try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!HEADER.equals(in.readLine())) {
+                    throw new IOException("Invalid header");
+                }
+                String fingerprint = in.readLine();
+                if (fingerprint == null) {
+                    throw new IOException("Missing fingerprint");
+                }
+                
+                result = new FileManifest(fingerprint);
+                String line = in.readLine();
+                while (line != null) {
+                    String[] parts = line.split("\t", 4);
+                    if (parts.length != 4) {
+                        throw new IOException("Invalid line: " + line);
+                    }
+                    result.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+                    line = in.readLine();
+                }
+                
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.logException("Can't read manifest " + file + "; all files will be processed again", e);
+                result = null;
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Deletes the manifest in the given destination directory, if there is one.
+     *
+     * @param destination The destination directory of the copied source tree.
+     *
+     * @throws IOException If deleting the manifest fails.
+     */
+    static void delete(File destination) throws IOException {
+        Files.deleteIfExists(new File(destination, FILE_NAME).toPath());
+    }
+    
+    /**
+     * Creates a fingerprint of the given variables, constants and settings. The fingerprint does not depend on the
+     * iteration order of the maps or the order of the allowed values of the variables.
+     *
+     * @param variables The {@link NonBooleanVariable}s used for the replacements.
+     * @param constants The constants used for the replacements.
+     * @param settings All other settings that affect the output, e.g. how non-source files are transferred. The
+     *      values are compared by their {@link Object#toString()}.
+     *
+     * @return A fingerprint of the variables, constants and settings.
+     */
+    static String createFingerprint(Map<String, NonBooleanVariable> variables, Map<String, Long> constants,
+            Map<String, ?> settings) {
+        MessageDigest digest = createDigest();
+        
+        for (Map.Entry<String, NonBooleanVariable> entry : new TreeMap<>(variables).entrySet()) {
+            // the constants are already sorted
+            String line = "var " + entry.getKey() + " " + entry.getValue().isInfinite() + " "
+                    + Arrays.toString(entry.getValue().getConstants()) + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        for (Map.Entry<String, Long> entry : new TreeMap<>(constants).entrySet()) {
+            String line = "const " + entry.getKey() + " " + entry.getValue() + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        for (Map.Entry<String, ?> entry : new TreeMap<>(settings).entrySet()) {
+            String line = "setting " + entry.getKey() + " " + entry.getValue() + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Creates a hash of the contents of the given file.
+     *
+     * @param file The file to hash.
+     *
+     * @return The hash of the file contents.
+     *
+     * @throws IOException If reading the file fails.
+     */
+    static String hashFile(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read = in.read(buffer);
+            while (read != -1) {
+                digest.update(buffer, 0, read);
+                read = in.read(buffer);
+            }
+        }
+        
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Creates the {@link MessageDigest} used for hashing.
+     *
+     * @return A new {@link MessageDigest}.
+     */
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Converts the given bytes into a hexadecimal string.
+     *
+     * @param bytes The bytes to convert.
+     *
+     * @return The hexadecimal string.
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+    
+}
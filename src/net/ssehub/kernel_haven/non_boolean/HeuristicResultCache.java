@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.non_boolean.heuristic.NonBooleanHeuristic;
+import net.ssehub.kernel_haven.util.Logger;
+
+/**
+ * A cache file for the result of the {@link NonBooleanHeuristic}. The result is stored together with a key that
+ * identifies the state of the source tree (the path, size and last modification time of all source files), the
+ * variable regex and whether the domains are compacted. If the key still matches in a later run, the heuristic does
+ * not need to scan the source tree again.
+ * <p>
+ * The file uses a compact binary format: a header, the key, and then the name, the infinite flag and the sorted
+ * constants of each variable.
+ *
+ * @author Adam
+ */
+final class HeuristicResultCache {
+    
+    private static final Logger LOGGER = Logger.get();
+    
+    private static final int MAGIC = 0x4B484E42; // "KHNB"
+    
+    private static final int VERSION = 1;
+    
+    /**
+     * The minimum number of bytes of a variable in the cache file: the length of its name, the infinite flag and the
+     * number of constants.
+     */
+    private static final int MIN_VARIABLE_SIZE = 2 + 1 + 4;
+    
+    /**
+     * Don't allow instances.
+     */
+    private HeuristicResultCache() {
+    }
+    
+    /**
+     * Creates the cache key for the given source tree and variable regex. Only the metadata of the files is used, so
+     * the contents of the files are not read.
+     *
+     * @param sourceTree The index of the source tree that the heuristic runs on.
+     * @param variableRegex The regex that defines the names of the variables.
+     * @param compactDomains Whether the heuristic compacts the domains of the variables.
+     *
+     * @return The key for the cache file.
+     */
+    static String createKey(SourceTreeIndex sourceTree, Pattern variableRegex, boolean compactDomains) {
+        MessageDigest digest = FileManifest.createDigest();
+        
+        String settings = "regex " + variableRegex.flags() + " " + variableRegex.pattern() + "\n"
+                + "compact " + compactDomains + "\n";
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        
+        List<SourceTreeIndex.Entry> sourceFiles = new ArrayList<>();
+        for (SourceTreeIndex.Entry entry : sourceTree.getFiles()) {
+            if (entry.isSourceFile()) {
+                sourceFiles.add(entry);
+            }
+        }
+        sourceFiles.sort((e1, e2) -> e1.getRelativePath().compareTo(e2.getRelativePath()));
+        
+        for (SourceTreeIndex.Entry entry : sourceFiles) {
+            String line = entry.getSize() + "\t" + entry.getLastModified() + "\t" + entry.getRelativePath() + "\n";
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        return FileManifest.toHex(digest.digest());
+    }
+    
+    /**
+     * Reads the cached heuristic result from the given file.
+     *
+     * @param cacheFile The cache file.
+     * @param key The key for the current source tree, see {@link #createKey(SourceTreeIndex, Pattern, boolean)}.
+     *
+     * @return The cached result, or <code>null</code> if the file does not exist, is invalid (e.g. truncated or with
+     *      corrupt counts), or was created for a different key.
+     */
+    static Map<String, NonBooleanVariable> read(File cacheFile, String key) {
+        Map<String, NonBooleanVariable> result = null;
+        
+        if (cacheFile.isFile()) {
+            // read the complete file, so that the counts can be checked against the remaining bytes
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    Files.readAllBytes(cacheFile.toPath())))) {
+                
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Invalid header");
+                }
+                
+                if (key.equals(in.readUTF())) {
+                    int numVariables = readCount(in, MIN_VARIABLE_SIZE);
+                    result = new HashMap<>(numVariables * 2);
+                    for (int i = 0; i < numVariables; i++) {
+                        String name = in.readUTF();
+                        boolean infinite = in.readBoolean();
+                        long[] constants = new long[readCount(in, Long.BYTES)];
+                        for (int j = 0; j < constants.length; j++) {
+                            constants[j] = in.readLong();
+                        }
+                        result.put(name, new NonBooleanVariable(name, constants, infinite));
+                    }
+                }
+                
+            } catch (IOException e) {
+                LOGGER.logException("Can't read heuristic cache " + cacheFile + "; running the heuristic again", e);
+                result = null;
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Reads the number of following elements and checks that the rest of the file is large enough for them.
+     *
+     * @param in The stream of the cache file. {@link DataInputStream#available()} must return the exact number of
+     *      remaining bytes.
+     * @param minElementSize The minimum number of bytes of each element.
+     *
+     * @return The number of elements.
+     *
+     * @throws IOException If reading fails, or the count is negative or larger than the rest of the file allows.
+     */
+    private static int readCount(DataInputStream in, int minElementSize) throws IOException {
+        int result = in.readInt();
+        if (result < 0 || (long) result * minElementSize > in.available()) {
+            throw new IOException("Invalid count " + result);
+        }
+        return result;
+    }
+    
+    /**
+     * Writes the given heuristic result to the given cache file. The file is replaced atomically, so a concurrent or
+     * aborted run never leaves a partially written cache.
+     *
+     * @param cacheFile The cache file.
+     * @param key The key for the current source tree, see {@link #createKey(SourceTreeIndex, Pattern, boolean)}.
+     * @param variables The result of the heuristic.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    static void write(File cacheFile, String key, Map<String, NonBooleanVariable> variables) throws IOException {
+        File tmpFile = new File(cacheFile.getAbsoluteFile().getParentFile(), cacheFile.getName() + ".tmp");
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmpFile.toPath())))) {
+            
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            
+            out.writeInt(variables.size());
+            for (Map.Entry<String, NonBooleanVariable> entry : new TreeMap<>(variables).entrySet()) {
+                NonBooleanVariable variable = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeBoolean(variable.isInfinite());
+                out.writeInt(variable.getConstants().length);
+                for (long constant : variable.getConstants()) {
+                    out.writeLong(constant);
+                }
+            }
+        }
+        
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+}
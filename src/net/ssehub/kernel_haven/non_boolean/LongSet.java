@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive <code>long</code> values. This avoids boxing every value into a {@link Long}, which is
+ * considerable for variability models with many integer variables. The values are stored in an open addressing hash
+ * table with linear probing.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Adam
+ */
+public final class LongSet {
+    
+    /**
+     * Marks an empty slot in the table. The value itself is tracked by {@link #containsEmptyMarker}.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private static final int DEFAULT_CAPACITY = 8;
+    
+    private long[] table;
+    
+    private boolean containsEmptyMarker;
+    
+    private int size;
+    
+    /**
+     * Creates an empty set.
+     */
+    public LongSet() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Creates an empty set that can hold the given number of values without growing.
+     * 
+     * @param expectedSize The expected number of values.
+     */
+    public LongSet(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity *= 2;
+        }
+        this.table = newTable(capacity);
+    }
+    
+    /**
+     * Adds the given value to this set.
+     * 
+     * @param value The value to add.
+     * 
+     * @return Whether the value was added, i.e. was not contained in this set before.
+     */
+    public boolean add(long value) {
+        boolean added;
+        if (value == EMPTY) {
+            added = !containsEmptyMarker;
+            containsEmptyMarker = true;
+            
+        } else {
+            int index = findSlot(table, value);
+            added = table[index] == EMPTY;
+            if (added) {
+                table[index] = value;
+                if (size + 1 > table.length / 2) {
+                    grow();
+                }
+            }
+        }
+        
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+    
+    /**
+     * Adds all values of the given set to this set.
+     * 
+     * @param other The set to add the values of.
+     */
+    public void addAll(LongSet other) {
+        if (other.containsEmptyMarker) {
+            add(EMPTY);
+        }
+        for (long value : other.table) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+    
+    /**
+     * Checks whether this set contains the given value.
+     * 
+     * @param value The value to check.
+     * 
+     * @return Whether the value is contained in this set.
+     */
+    public boolean contains(long value) {
+        boolean result;
+        if (value == EMPTY) {
+            result = containsEmptyMarker;
+        } else {
+            result = table[findSlot(table, value)] == value;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the number of values in this set.
+     * 
+     * @return The number of values.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Checks whether this set is empty.
+     * 
+     * @return Whether this set contains no values.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns all values of this set as a sorted array.
+     * 
+     * @return A new array with all values of this set, in ascending order.
+     */
+    public long[] toSortedArray() {
+        long[] result = new long[size];
+        int i = 0;
+        if (containsEmptyMarker) {
+            result[i++] = EMPTY;
+        }
+        for (long value : table) {
+            if (value != EMPTY) {
+                result[i++] = value;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return Arrays.toString(toSortedArray());
+    }
+    
+    /**
+     * Doubles the size of the table.
+     */
+    private void grow() {
+        long[] newTable = newTable(table.length * 2);
+        for (long value : table) {
+            if (value != EMPTY) {
+                newTable[findSlot(newTable, value)] = value;
+            }
+        }
+        table = newTable;
+    }
+    
+    /**
+     * Finds the slot of the given value in the given table.
+     * 
+     * @param table The table to search in. Has a length that is a power of 2 and at least one empty slot.
+     * @param value The value to search for; must not be {@link #EMPTY}.
+     * 
+     * @return The index of the slot that contains the value, or of the empty slot where it would be inserted.
+     */
+    private static int findSlot(long[] table, long value) {
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY && table[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+    
+    /**
+     * Spreads the bits of the given value, so that consecutive values don't end up in consecutive slots.
+     * 
+     * @param value The value to hash.
+     * 
+     * @return The hash of the value.
+     */
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * Creates a new, empty table.
+     * 
+     * @param capacity The capacity of the table; a power of 2.
+     * 
+     * @return The new table.
+     */
+    private static long[] newTable(int capacity) {
+        long[] result = new long[capacity];
+        Arrays.fill(result, EMPTY);
+        return result;
+    }
+    
+}
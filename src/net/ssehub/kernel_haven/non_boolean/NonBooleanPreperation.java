@@ -20,13 +20,33 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.ssehub.kernel_haven.IPreparation;
 import net.ssehub.kernel_haven.PipelineConfigurator;
@@ -48,6 +68,29 @@ import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
  * This copies the complete source_tree to make the necessary replacements. This uses either
  * {@link FiniteIntegerVariable}s from the variability model, or if these are not available it uses a heuristic to
  * detect possible ranges for non-boolean variables.
+ * <p>
+ * If {@link NonBooleanSettings#NUMBER_OF_THREADS} is greater than 1, the files are copied by a work-stealing
+ * {@link ForkJoinPool}. Each file is still processed completely by one worker, so the result is the same as for the
+ * sequential copy. The same number of threads is used by the {@link NonBooleanHeuristic}, whose result can be cached
+ * between runs (see {@link NonBooleanSettings#HEURISTIC_CACHE}). The source tree is walked only once (see
+ * {@link SourceTreeIndex}); the result is used for the heuristic, the progress logging and the copying. With
+ * {@link ExecutionMode#VIRTUAL_THREADS}, each file is processed in its own virtual thread instead; with
+ * {@link ExecutionMode#PIPELINE}, reading, transforming and writing the files are done by separate threads at the same
+ * time.
+ * <p>
+ * If {@link NonBooleanSettings#OVERLAY} is enabled, only the files that are changed by the replacements are written;
+ * all other files become symbolic links to the original files.
+ * <p>
+ * If {@link NonBooleanSettings#INCREMENTAL} is enabled, a {@link FileManifest} is stored in the destination
+ * directory. The next run then only processes the files that changed since the previous run. If the variables,
+ * constants, any other setting that affects the output or the {@link #OUTPUT_VERSION} changed, all files are processed
+ * again.
+ * <p>
+ * Files that are not .c or .h files are transferred according to {@link NonBooleanSettings#NON_SOURCE_FILES}.
+ * Source files that contain nothing that needs to be rewritten (see {@link CPPUtils#canPassThrough(InputStream)})
+ * are copied without decoding them line by line. All other source files are rewritten by a
+ * {@link SourceFileRewriter}, which only decodes the #if and #elif lines. The results of the replacements are cached
+ * in a {@link ReplacementCache} of size {@link NonBooleanSettings#CONDITION_CACHE_SIZE}.
  * 
  * @author Adam
  * @author El-Sharkawy
@@ -58,18 +101,141 @@ public class NonBooleanPreperation implements IPreparation {
     
     private static final boolean REMOVE_CONSISTENCY_CHECKS = true;
     
+    /**
+     * The version of the replacement logic. This is part of the fingerprint of the {@link FileManifest}; it must be
+     * increased whenever a change in this plugin changes the output for the same input, so that incremental runs
+     * don't keep outdated files of a previous version.
+     */
+    static final int OUTPUT_VERSION = 1;
+    
+    /**
+     * The maximum number of files that are cloned by a single <code>cp --reflink=always</code> process.
+     */
+    private static final int REFLINK_BATCH_SIZE = 1000;
+    
     private File originalSourceTree;
     
     private File copiedSourceTree;
     
+    /**
+     * The {@link NonBooleanReplacer}, shared by all worker threads.
+     */
     private NonBooleanReplacer replacer;
     
+    private int numThreads;
+    
+    private ExecutionMode executionMode;
+    
+    private int maxOpenFiles;
+    
+    private int queueCapacity;
+    
+    private boolean incremental;
+    
+    /**
+     * The manifest of the previous run. <code>null</code> if all files are processed.
+     */
+    private FileManifest previousManifest;
+    
+    /**
+     * The manifest that is created in this run. <code>null</code> if {@link #incremental} is disabled.
+     */
+    private FileManifest currentManifest;
+    
+    private AtomicInteger numUpToDateFiles;
+    
+    /**
+     * How non-source files are transferred. Falls back to {@link NonSourceFileStrategy#COPY} if the configured
+     * strategy fails.
+     */
+    private volatile NonSourceFileStrategy nonSourceFileStrategy;
+    
+    /**
+     * The non-source files that still need to be cloned with {@link NonSourceFileStrategy#REFLINK}, by the
+     * destination directory. These are cloned in batches after all other files are copied, see
+     * {@link #reflinkPendingFiles()}.
+     */
+    private Map<File, Queue<File>> pendingReflinks;
+    
+    /**
+     * Whether source files may be processed on the byte level, i.e. copied directly if they need no rewriting or
+     * rewritten by a {@link SourceFileRewriter}. Disabled if a sub-class overrides {@link #continueReading(String)},
+     * since this may change the result for any file.
+     */
+    private boolean allowByteLevelProcessing;
+    
+    /**
+     * One {@link SourceFileRewriter} per worker thread, so that its buffers are re-used for all files of the thread.
+     */
+    private ThreadLocal<SourceFileRewriter> rewriter = ThreadLocal.withInitial(SourceFileRewriter::new);
+    
+    private AtomicInteger numPassedThroughFiles;
+    
+    private boolean overlay;
+    
+    /**
+     * Whether {@link #overlay} creates symbolic links. Set to <code>false</code> if creating a link fails, so that
+     * all further files are copied instead.
+     */
+    private volatile boolean overlayLinksSupported;
+    
+    private AtomicInteger numLinkedFiles;
+    
+    private int conditionCacheSize;
+    
+    /**
+     * The cache for the replaced conditions. <code>null</code> if caching is disabled.
+     */
+    private ReplacementCache conditionCache;
+    
+    /**
+     * The file that caches the result of the {@link NonBooleanHeuristic}. <code>null</code> if caching is disabled.
+     */
+    private File heuristicCache;
+    
+    private boolean compactDomains;
+    
     @Override
     public void run(Configuration config) throws SetUpException {
         NonBooleanSettings.registerAllSettings(config);
         
         copiedSourceTree = config.getValue(NonBooleanSettings.DESTINATION_DIR);
         originalSourceTree = config.getValue(DefaultSettings.SOURCE_TREE);
+        numThreads = config.getValue(NonBooleanSettings.NUMBER_OF_THREADS);
+        executionMode = config.getValue(NonBooleanSettings.EXECUTION_MODE);
+        maxOpenFiles = config.getValue(NonBooleanSettings.MAX_OPEN_FILES);
+        queueCapacity = config.getValue(NonBooleanSettings.QUEUE_CAPACITY);
+        incremental = config.getValue(NonBooleanSettings.INCREMENTAL);
+        nonSourceFileStrategy = config.getValue(NonBooleanSettings.NON_SOURCE_FILES);
+        pendingReflinks = new ConcurrentHashMap<>();
+        overlay = config.getValue(NonBooleanSettings.OVERLAY);
+        overlayLinksSupported = overlay;
+        numLinkedFiles = new AtomicInteger();
+        if (overlay && nonSourceFileStrategy == NonSourceFileStrategy.COPY) {
+            nonSourceFileStrategy = NonSourceFileStrategy.SYMBOLIC_LINK;
+        }
+        allowByteLevelProcessing = !overridesContinueReading();
+        numPassedThroughFiles = new AtomicInteger();
+        conditionCacheSize = config.getValue(NonBooleanSettings.CONDITION_CACHE_SIZE);
+        heuristicCache = config.getValue(NonBooleanSettings.HEURISTIC_CACHE);
+        compactDomains = config.getValue(NonBooleanSettings.COMPACT_DOMAINS);
+        
+        if (numThreads < 1) {
+            throw new SetUpException(NonBooleanSettings.NUMBER_OF_THREADS.getKey() + " must be at least 1, but is "
+                    + numThreads);
+        }
+        if (maxOpenFiles < 1) {
+            throw new SetUpException(NonBooleanSettings.MAX_OPEN_FILES.getKey() + " must be at least 1, but is "
+                    + maxOpenFiles);
+        }
+        if (queueCapacity < 1) {
+            throw new SetUpException(NonBooleanSettings.QUEUE_CAPACITY.getKey() + " must be at least 1, but is "
+                    + queueCapacity);
+        }
+        if (conditionCacheSize < 0) {
+            throw new SetUpException(NonBooleanSettings.CONDITION_CACHE_SIZE.getKey() + " must not be negative, but is "
+                    + conditionCacheSize);
+        }
         
         try {
             if (Util.isNestedInDirectory(originalSourceTree, copiedSourceTree)) {
@@ -82,6 +248,10 @@ public class NonBooleanPreperation implements IPreparation {
         
         try (PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation Complete Runtime")) {
             prepare(config);
+            p.addExtraData("passed through source files", numPassedThroughFiles.get());
+            if (overlay) {
+                p.addExtraData("linked unchanged source files", numLinkedFiles.get());
+            }
         } catch (IOException e) {
             throw new SetUpException(e);
         }
@@ -103,15 +273,6 @@ public class NonBooleanPreperation implements IPreparation {
     private synchronized void prepare(Configuration config) throws IOException, SetUpException {
         LOGGER.logDebug("Starting preperation...");
         
-        // make sure that the destination is empty
-        try {
-            Util.clearFolder(copiedSourceTree);
-        } catch (IOException e) {
-            LOGGER.logException("Cannot clear/create " + copiedSourceTree.getName() + " in "
-                    + copiedSourceTree.getParentFile().getAbsolutePath(), e);
-            throw new SetUpException(e);
-        }
-        
         Map<String, NonBooleanVariable> variables = new HashMap<>();
         boolean nonBooleanModelRead = false;
         
@@ -119,126 +280,974 @@ public class NonBooleanPreperation implements IPreparation {
         VariabilityModel varModel = PipelineConfigurator.instance().getVmProvider().getResult();
         if (null != varModel) {
             for (VariabilityVariable variable : varModel.getVariables()) {
-                Set<Long> requiredConstants = new HashSet<>();
                 if (null != variable && variable instanceof FiniteIntegerVariable) {
                     nonBooleanModelRead = true;
                     FiniteIntegerVariable intVar = (FiniteIntegerVariable) variable;
-                    for (int i = 0; i < intVar.getSizeOfRange(); i++) {
-                        requiredConstants.add((long) intVar.getValue(i));
-                    }
-                    variables.put(variable.getName(), new NonBooleanVariable(variable.getName(), requiredConstants));
+                    variables.put(variable.getName(), NonBooleanReplacer.createVariable(intVar));
                     
                 } else if (variable instanceof InfiniteIntegerVariable) {
                     nonBooleanModelRead = true;
                     variables.put(variable.getName(), 
-                            new NonBooleanVariable(variable.getName(), new HashSet<>(), true));
+                            new NonBooleanVariable(variable.getName(), new long[0], true));
                 }
             }
         }
         
+        SourceTreeIndex sourceTree = SourceTreeIndex.create(originalSourceTree);
+        
         if (!nonBooleanModelRead) {
-            // walk through all *.c and *.h files in the source_tree, and collect non boolean operations.
-            NonBooleanHeuristic heuristic = new NonBooleanHeuristic(config);
-            heuristic.addAllSourceFiles(originalSourceTree);
-            variables = heuristic.getResult();
+            variables = runHeuristic(config, sourceTree);
         }
         
-        this.replacer = new NonBooleanReplacer(variables, getConstants());
+        Map<String, Long> constants = getConstants();
+        this.replacer = new NonBooleanReplacer(variables, constants);
+        this.conditionCache = conditionCacheSize > 0 ? new ReplacementCache(conditionCacheSize) : null;
+        
+        prepareDestination(FileManifest.createFingerprint(variables, constants, getOutputSettings()));
         
         // copy the source_tree to destination, while replacing the relational expressions with NonBoolean variables
-        int numFiles = (int) Files.walk(originalSourceTree.toPath())
-                .filter((path) -> Files.isRegularFile(path))
-                .count();
+        int numFiles = sourceTree.getFiles().size();
         
         LOGGER.logDebug("Copying " + numFiles + " files from " + originalSourceTree.getAbsolutePath() + " to "
                 + copiedSourceTree.getAbsolutePath());
         ProgressLogger progress = new ProgressLogger("NonBooleanPreparation Copying", numFiles);
-        copy(originalSourceTree, copiedSourceTree, progress);
+        for (SourceTreeIndex.Entry directory : sourceTree.getDirectories()) {
+            new File(copiedSourceTree, directory.getRelativePath()).mkdir();
+        }
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            copyVirtual(sourceTree.getFiles(), progress);
+        } else if (executionMode == ExecutionMode.PIPELINE) {
+            copyPipelined(sourceTree.getFiles(), progress);
+        } else if (numThreads > 1) {
+            copyParallel(sourceTree.getFiles(), progress);
+        } else {
+            copy(sourceTree.getFiles(), progress);
+        }
         progress.close();
+        reflinkPendingFiles();
+        
+        if (conditionCache != null) {
+            PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation condition cache");
+            p.addExtraData("hits", conditionCache.getHits());
+            p.addExtraData("misses", conditionCache.getMisses());
+            p.addExtraData("evictions", conditionCache.getEvictions());
+            p.close();
+            conditionCache = null;
+        }
+        
+        if (currentManifest != null) {
+            if (previousManifest != null) {
+                LOGGER.logInfo(numUpToDateFiles.get() + " of " + numFiles + " files were up-to-date");
+                removeDeletedFiles();
+            }
+            currentManifest.write(copiedSourceTree);
+        }
+    }
+    
+    /**
+     * Returns all settings that affect the output, apart from the variables and constants. These are part of the
+     * fingerprint of the {@link FileManifest}, so that an incremental run does not keep files (or links) that were
+     * created with different settings.
+     * 
+     * @return The settings that affect the output, by name.
+     */
+    private Map<String, Object> getOutputSettings() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("version", OUTPUT_VERSION);
+        result.put("remove_consistency_checks", REMOVE_CONSISTENCY_CHECKS);
+        result.put("byte_level", allowByteLevelProcessing);
+        result.put(NonBooleanSettings.OVERLAY.getKey(), overlay);
+        result.put(NonBooleanSettings.NON_SOURCE_FILES.getKey(), nonSourceFileStrategy);
+        return result;
+    }
+    
+    /**
+     * Walks through all *.c and *.h files in the source tree and collects non boolean operations with the
+     * {@link NonBooleanHeuristic}. If {@link NonBooleanSettings#HEURISTIC_CACHE} is set and contains the result for
+     * the same source tree, the cached result is used instead.
+     * 
+     * @param config The configuration to use.
+     * @param sourceTree The index of the original source tree.
+     * 
+     * @return The {@link NonBooleanVariable}s found by the heuristic.
+     * 
+     * @throws IOException If reading source files fails.
+     * @throws SetUpException If creating the heuristic fails.
+     */
+    private Map<String, NonBooleanVariable> runHeuristic(Configuration config, SourceTreeIndex sourceTree)
+            throws IOException, SetUpException {
+        
+        String cacheKey = null;
+        Map<String, NonBooleanVariable> result = null;
+        if (heuristicCache != null) {
+            cacheKey = HeuristicResultCache.createKey(sourceTree, config.getValue(NonBooleanSettings.VARIABLE_REGEX),
+                    compactDomains);
+            result = HeuristicResultCache.read(heuristicCache, cacheKey);
+            if (result != null) {
+                LOGGER.logInfo("Using cached heuristic result from " + heuristicCache);
+            }
+        }
+        
+        if (result == null) {
+            NonBooleanHeuristic heuristic = new NonBooleanHeuristic(config);
+            heuristic.setNumberOfThreads(numThreads);
+            heuristic.setCompactDomains(compactDomains);
+            heuristic.addSourceFiles(sourceTree.getSourceFiles());
+            result = heuristic.getResult();
+            
+            if (heuristicCache != null) {
+                try {
+                    HeuristicResultCache.write(heuristicCache, cacheKey, result);
+                } catch (IOException e) {
+                    LOGGER.logException("Can't write heuristic cache " + heuristicCache, e);
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Prepares the {@link #copiedSourceTree} before the files are copied. If {@link #incremental} is enabled and the
+     * manifest of the previous run was created with the same variables, constants and settings, then the previous
+     * result is kept. Otherwise the destination is cleared.
+     * 
+     * @param fingerprint The fingerprint of the variables, constants and settings used in this run.
+     * 
+     * @throws SetUpException If clearing the destination fails.
+     */
+    private void prepareDestination(String fingerprint) throws SetUpException {
+        previousManifest = null;
+        currentManifest = null;
+        numUpToDateFiles = new AtomicInteger();
+        
+        if (incremental) {
+            FileManifest previous = FileManifest.read(copiedSourceTree);
+            if (previous != null && previous.getFingerprint().equals(fingerprint)) {
+                previousManifest = previous;
+            } else if (previous != null) {
+                LOGGER.logInfo("Non boolean variables, constants or settings changed since the previous run; "
+                        + "processing all files again");
+            }
+            currentManifest = new FileManifest(fingerprint);
+        }
+        
+        try {
+            if (previousManifest != null) {
+                // an aborted run must not leave a manifest that claims that all files are up-to-date
+                FileManifest.delete(copiedSourceTree);
+            } else {
+                // make sure that the destination is empty
+                Util.clearFolder(copiedSourceTree);
+            }
+        } catch (IOException e) {
+            LOGGER.logException("Cannot clear/create " + copiedSourceTree.getName() + " in "
+                    + copiedSourceTree.getParentFile().getAbsolutePath(), e);
+            throw new SetUpException(e);
+        }
+    }
+    
+    /**
+     * Deletes all files (and then empty directories) from the {@link #copiedSourceTree} that were copied in the
+     * previous run, but no longer exist in the {@link #originalSourceTree}.
+     * 
+     * @throws IOException If deleting a file fails.
+     */
+    private void removeDeletedFiles() throws IOException {
+        Path destination = copiedSourceTree.toPath();
+        
+        for (String path : previousManifest.getPaths()) {
+            if (currentManifest.get(path) == null) {
+                Path deleted = destination.resolve(path);
+                Files.deleteIfExists(deleted);
+                
+                Path dir = deleted.getParent();
+                while (dir != null && !dir.equals(destination)
+                        && !originalSourceTree.toPath().resolve(destination.relativize(dir)).toFile().exists()
+                        && dir.toFile().list().length == 0) {
+                    Files.delete(dir);
+                    dir = dir.getParent();
+                }
+            }
+        }
     }
 
     
     /**
-     * Copies the given file. If the file is a .c or .h file, then replacements are done. If from is a directory
-     * then this recursively copies the files inside it.
+     * Copies the given files from {@link #originalSourceTree} to {@link #copiedSourceTree} in the calling thread.
+     * The parent directories must already exist in {@link #copiedSourceTree}.
      * 
-     * @param from The file to copy.
-     * @param to The destination.
+     * @param files The files to copy.
      * @param progress The {@link ProgressLogger} to notify about finished files.
      * 
+     * @throws IOException If copying a file fails.
+     */
+    private void copy(List<SourceTreeIndex.Entry> files, ProgressLogger progress) throws IOException {
+        for (SourceTreeIndex.Entry file : files) {
+            copyFile(file, progress);
+        }
+    }
+    
+    /**
+     * Copies the given files with a work-stealing {@link ForkJoinPool} of {@link #numThreads} workers. Same as
+     * {@link #copy(List, ProgressLogger)}, but the list of files is split into separate tasks.
+     * 
+     * @param files The files to copy.
+     * @param progress The {@link ProgressLogger} to notify about finished files.
+     * 
+     * @throws IOException If copying any of the files fails.
+     */
+    private void copyParallel(List<SourceTreeIndex.Entry> files, ProgressLogger progress) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            pool.invoke(new CopyTask(files, 0, files.size(), progress));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Copies the given files with one (virtual) thread per file, see {@link #createVirtualThreadExecutor()}. At most
+     * {@link #maxOpenFiles} files are processed at once. The {@link SourceFileRewriter}s are shared between the
+     * short-lived threads, instead of creating new ones for each file.
+     * 
+     * @param files The files to copy.
+     * @param progress The {@link ProgressLogger} to notify about finished files.
+     * 
+     * @throws IOException If copying any of the files fails.
+     */
+    private void copyVirtual(List<SourceTreeIndex.Entry> files, ProgressLogger progress) throws IOException {
+        Semaphore openFiles = new Semaphore(maxOpenFiles);
+        Queue<SourceFileRewriter> idleRewriters = new ConcurrentLinkedQueue<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        
+        ExecutorService executor = createVirtualThreadExecutor();
+        try {
+            for (SourceTreeIndex.Entry file : files) {
+                openFiles.acquire();
+                if (error.get() != null) {
+                    openFiles.release();
+                    break;
+                }
+                
+                executor.execute(() -> {
+                    SourceFileRewriter idleRewriter = idleRewriters.poll();
+                    if (idleRewriter != null) {
+                        rewriter.set(idleRewriter);
+                    }
+                    
+                    try {
+                        copyFile(file, progress);
+                    } catch (Throwable e) {
+                        // also record Errors, otherwise the executor swallows them and the run looks successful
+                        error.compareAndSet(null, e);
+                    } finally {
+                        idleRewriters.add(rewriter.get());
+                        rewriter.remove();
+                        openFiles.release();
+                    }
+                });
+            }
+            
+            // wait until all files are done
+            openFiles.acquire(maxOpenFiles);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            executor.shutdown();
+        }
+        
+        rethrow(error.get());
+    }
+    
+    /**
+     * Throws the given failure of a copy thread in the calling thread.
+     * 
+     * @param failure The failure to throw; either an {@link IOException}, a {@link RuntimeException} or an
+     *      {@link Error}. If this is <code>null</code>, nothing is thrown.
+     * 
+     * @throws IOException If the failure is an {@link IOException}.
+     */
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw (IOException) failure;
+        }
+    }
+    
+    /**
+     * Creates an executor that starts a new virtual thread for each task. Virtual threads are only available since
+     * Java 21, so this uses reflection; on older Java versions, a fixed thread pool of {@link #maxOpenFiles} platform
+     * threads is used instead.
+     * 
+     * @return The executor to use for {@link #copyVirtual(List, ProgressLogger)}.
+     */
+    private ExecutorService createVirtualThreadExecutor() {
+        ExecutorService result;
+        try {
+            result = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.logInfo("Virtual threads are not available in this Java version; using " + maxOpenFiles
+                    + " platform threads instead");
+            result = Executors.newFixedThreadPool(maxOpenFiles);
+        }
+        return result;
+    }
+    
+    /**
+     * Copies the given files in three pipelined stages, see {@link ExecutionMode#PIPELINE}: One thread calls
+     * {@link #readFile(SourceTreeIndex.Entry, SourceFileRewriter, ProgressLogger)}, {@link #numThreads} threads call
+     * {@link #transformFile(PendingFile)}, and one thread calls {@link #writeFile(PendingFile, ProgressLogger)}. The
+     * stages are connected by bounded queues, so a stage blocks if the next stage is too slow. If any stage fails,
+     * all threads are interrupted and the first failure is thrown.
+     * 
+     * @param files The files to copy.
+     * @param progress The {@link ProgressLogger} to notify about finished files.
+     * 
+     * @throws IOException If copying any of the files fails.
+     */
+    private void copyPipelined(List<SourceTreeIndex.Entry> files, ProgressLogger progress) throws IOException {
+        BlockingQueue<PendingFile> toTransform = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<PendingFile> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+        // marks the end of the queues
+        PendingFile poison = new PendingFile(null, null, null, null);
+        
+        // the rewriters hold the file contents; they are handed from stage to stage and then re-used
+        Queue<SourceFileRewriter> idleRewriters = new ConcurrentLinkedQueue<>();
+        AtomicInteger runningTransformers = new AtomicInteger(numThreads);
+        
+        List<Thread> threads = new ArrayList<>(numThreads + 2);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        
+        threads.add(new Thread(() -> {
+            runStage(threads, error, () -> {
+                for (SourceTreeIndex.Entry file : files) {
+                    SourceFileRewriter rw = idleRewriters.poll();
+                    if (rw == null) {
+                        rw = new SourceFileRewriter();
+                    }
+                    
+                    PendingFile pending = readFile(file, rw, progress);
+                    if (pending != null) {
+                        toTransform.put(pending);
+                    } else {
+                        idleRewriters.add(rw);
+                    }
+                }
+                for (int i = 0; i < numThreads; i++) {
+                    toTransform.put(poison);
+                }
+            });
+        }, "NonBooleanPreparation reader"));
+        
+        for (int i = 0; i < numThreads; i++) {
+            threads.add(new Thread(() -> {
+                runStage(threads, error, () -> {
+                    PendingFile pending = toTransform.take();
+                    while (pending != poison) {
+                        transformFile(pending);
+                        toWrite.put(pending);
+                        pending = toTransform.take();
+                    }
+                    if (runningTransformers.decrementAndGet() == 0) {
+                        toWrite.put(poison);
+                    }
+                });
+            }, "NonBooleanPreparation transformer " + (i + 1)));
+        }
+        
+        threads.add(new Thread(() -> {
+            runStage(threads, error, () -> {
+                PendingFile pending = toWrite.take();
+                while (pending != poison) {
+                    writeFile(pending, progress);
+                    idleRewriters.add(pending.rewriter);
+                    pending = toWrite.take();
+                }
+            });
+        }, "NonBooleanPreparation writer"));
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        
+        rethrow(error.get());
+    }
+    
+    /**
+     * The work of a single stage in {@link NonBooleanPreperation#copyPipelined(List, ProgressLogger)}.
+     */
+    @FunctionalInterface
+    private interface Stage {
+        
+        /**
+         * Runs this stage until its input is exhausted.
+         * 
+         * @throws IOException If processing a file fails.
+         * @throws InterruptedException If the thread is interrupted while waiting for a queue.
+         */
+        void run() throws IOException, InterruptedException;
+        
+    }
+    
+    /**
+     * Runs a single stage of {@link #copyPipelined(List, ProgressLogger)}. If the stage fails (including with an
+     * {@link Error}), the failure is stored and all threads of the pipeline are interrupted, so that no stage waits
+     * forever for a stage that has died.
+     * 
+     * @param threads All threads of the pipeline.
+     * @param error Stores the first failure of any stage.
+     * @param stage The stage to run.
+     */
+    private static void runStage(List<Thread> threads, AtomicReference<Throwable> error, Stage stage) {
+        try {
+            stage.run();
+        } catch (InterruptedException e) {
+            // another stage failed
+        } catch (Throwable e) {
+            if (error.compareAndSet(null, e)) {
+                for (Thread thread : threads) {
+                    if (thread != Thread.currentThread()) {
+                        thread.interrupt();
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * A task for the {@link ForkJoinPool} used in {@link NonBooleanPreperation#copyParallel(List, ProgressLogger)}.
+     * Copies a range of the files, or splits the range into two new tasks if it is too large.
+     */
+    private class CopyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -3425096123185318738L;
+        
+        /**
+         * The maximum number of files that a single task copies without splitting the range.
+         */
+        private static final int MAX_FILES_PER_TASK = 8;
+
+        private List<SourceTreeIndex.Entry> files;
+        
+        private int start;
+        
+        private int end;
+        
+        private ProgressLogger progress;
+        
+        /**
+         * Creates this task.
+         * 
+         * @param files The list of files.
+         * @param start The index of the first file to copy, inclusive.
+         * @param end The index of the last file to copy, exclusive.
+         * @param progress The {@link ProgressLogger} to notify about finished files.
+         */
+        public CopyTask(List<SourceTreeIndex.Entry> files, int start, int end, ProgressLogger progress) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+            this.progress = progress;
+        }
+        
+        @Override
+        protected void compute() {
+            if (end - start > MAX_FILES_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new CopyTask(files, start, middle, progress), new CopyTask(files, middle, end, progress));
+                
+            } else {
+                try {
+                    copy(files.subList(start, end), progress);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * A source file that is read and needs to be transformed and written.
+     */
+    private static final class PendingFile {
+        
+        private SourceTreeIndex.Entry file;
+        
+        private File to;
+        
+        private FileManifest.Entry manifestEntry;
+        
+        private SourceFileRewriter rewriter;
+        
+        /**
+         * Creates a pending file.
+         * 
+         * @param file The source file.
+         * @param to The destination.
+         * @param manifestEntry The entry for the {@link NonBooleanPreperation#currentManifest}. May be
+         *      <code>null</code>.
+         * @param rewriter The {@link SourceFileRewriter} that the file is read into.
+         */
+        PendingFile(SourceTreeIndex.Entry file, File to, FileManifest.Entry manifestEntry,
+                SourceFileRewriter rewriter) {
+            this.file = file;
+            this.to = to;
+            this.manifestEntry = manifestEntry;
+            this.rewriter = rewriter;
+        }
+        
+    }
+    
+    /**
+     * Copies a single (non-directory) file. If the file is a .c or .h file, then replacements are done. Files that
+     * are unchanged since the previous incremental run are skipped. May be called by multiple worker threads at the
+     * same time.
+     * 
+     * @param file The file to copy. Is copied to the same relative path in {@link #copiedSourceTree}.
+     * @param progress The {@link ProgressLogger} to notify about the finished file.
+     * 
      * @throws IOException If copying the file fails.
      */
-    private void copy(File from, File to, ProgressLogger progress) throws IOException {
-        for (File f : from.listFiles()) {
+    private void copyFile(SourceTreeIndex.Entry file, ProgressLogger progress) throws IOException {
+        PendingFile pending = readFile(file, rewriter.get(), progress);
+        if (pending != null) {
+            transformFile(pending);
+            writeFile(pending, progress);
+        }
+    }
+    
+    /**
+     * The first step of copying a single file: Everything that does not require replacements is done here, i.e.
+     * skipping up-to-date files, transferring non-source files and passing through source files that need no
+     * rewriting. Other source files are read into the given {@link SourceFileRewriter}; these need to be passed
+     * to {@link #transformFile(PendingFile)} and {@link #writeFile(PendingFile, ProgressLogger)}.
+     * 
+     * @param file The file to copy. Is copied to the same relative path in {@link #copiedSourceTree}.
+     * @param rw The {@link SourceFileRewriter} to read source files into.
+     * @param progress The {@link ProgressLogger} to notify if the file is finished.
+     * 
+     * @return The file that still needs to be transformed and written; <code>null</code> if the file is finished.
+     * 
+     * @throws IOException If copying or reading the file fails.
+     */
+    private PendingFile readFile(SourceTreeIndex.Entry file, SourceFileRewriter rw, ProgressLogger progress)
+            throws IOException {
+        
+        String path = file.getRelativePath();
+        File from = file.getFile();
+        File to = new File(copiedSourceTree, path);
+        
+        FileManifest.Entry entry = null;
+        boolean upToDate = false;
+        
+        if (currentManifest != null) {
+            FileManifest.Entry previous = previousManifest != null ? previousManifest.get(path) : null;
+            entry = FileManifest.Entry.of(from, file.getSize(), file.getLastModified(), previous);
+            upToDate = entry.hasSameContent(previous) && to.isFile();
+        }
+        
+        PendingFile result = null;
+        if (upToDate) {
+            numUpToDateFiles.incrementAndGet();
             
-            File newF = new File(to, f.getName());
+        } else {
+            if (previousManifest != null) {
+                Files.deleteIfExists(to.toPath());
+            }
             
-            if (f.isDirectory()) {
-                newF.mkdir();
-                copy(f, newF, progress);
+            if (!file.isSourceFile()) {
+                transferNonSourceFile(from, to);
+                
+            } else if (!allowByteLevelProcessing) {
+                copySourceFile(from, to);
+                
             } else {
-                if (f.getName().endsWith(".c") || f.getName().endsWith(".h")) {
-                    copySourceFile(f, newF);
+                boolean canPassThrough;
+                try (InputStream in = Files.newInputStream(from.toPath())) {
+                    canPassThrough = CPPUtils.canPassThrough(in);
+                }
+                
+                if (canPassThrough) {
+                    if (!overlayLinksSupported || !linkUnchangedFile(from, to)) {
+                        transferFile(from, to);
+                    }
+                    numPassedThroughFiles.incrementAndGet();
                 } else {
-                    Util.copyFile(f, newF);
+                    rw.read(from);
+                    result = new PendingFile(file, to, entry, rw);
                 }
-                progress.processedOne();
             }
         }
+        
+        if (result == null) {
+            finishFile(path, entry, progress);
+        }
+        return result;
     }
     
     /**
-     * Copies a source file (.c or .h) while doing replacements.
+     * The second step of copying a source file: Does the replacements in the {@link SourceFileRewriter} of the given
+     * file. This is the CPU-intensive part of copying a file.
      * 
-     * @param from The file to copy.
+     * @param pending The file that was read by {@link #readFile(SourceTreeIndex.Entry, SourceFileRewriter,
+     *      ProgressLogger)}.
+     * 
+     * @throws IOException If the transformation fails.
+     */
+    private void transformFile(PendingFile pending) throws IOException {
+        SourceFileRewriter rw = pending.rewriter;
+        File from = pending.file.getFile();
+        
+        PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation copySourceFile()");
+        try {
+            if (REMOVE_CONSISTENCY_CHECKS && rw.containsErrorDirective()) {
+                // the CppBufferedWriter works on Strings; the charset keeps all bytes as they are
+                try (LineNumberReader in = new LineNumberReader(
+                        new InputStreamReader(rw.getInput(), SourceFileRewriter.CHARSET));
+                        Writer out = new CppBufferedWriter(new BufferedWriter(
+                                new OutputStreamWriter(rw.resetOutput(), SourceFileRewriter.CHARSET)))) {
+                    
+                    rewriteLines(in, out, from);
+                }
+            } else {
+                rw.rewrite((line, lineNumber) -> replaceInLine(line, from, lineNumber));
+            }
+        } finally {
+            p.close();
+        }
+    }
+    
+    /**
+     * The last step of copying a source file: Writes the result of {@link #transformFile(PendingFile)} to the
+     * destination. In {@link #overlay} mode, a symbolic link to the original file is created instead if the
+     * transformation did not change anything.
+     * 
+     * @param pending The transformed file.
+     * @param progress The {@link ProgressLogger} to notify about the finished file.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    private void writeFile(PendingFile pending, ProgressLogger progress) throws IOException {
+        boolean linked = false;
+        if (overlayLinksSupported && pending.rewriter.isOutputUnchanged()) {
+            linked = linkUnchangedFile(pending.file.getFile(), pending.to);
+        }
+        if (!linked) {
+            pending.rewriter.writeOutput(pending.to);
+        }
+        finishFile(pending.file.getRelativePath(), pending.manifestEntry, progress);
+    }
+    
+    /**
+     * Creates a symbolic link to the original file, for a source file that is not changed in {@link #overlay} mode.
+     * If this fails, a warning is logged and {@link #overlayLinksSupported} is disabled.
+     * 
+     * @param from The original file.
      * @param to The destination.
      * 
+     * @return Whether the link was created; if not, the file needs to be written.
+     */
+    private boolean linkUnchangedFile(File from, File to) {
+        boolean result;
+        try {
+            Files.createSymbolicLink(to.toPath(), from.getAbsoluteFile().toPath());
+            numLinkedFiles.incrementAndGet();
+            result = true;
+            
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            synchronized (this) {
+                if (overlayLinksSupported) {
+                    LOGGER.logWarning("Can't create symbolic links for unchanged source files; copying them instead",
+                            e.toString());
+                    overlayLinksSupported = false;
+                }
+            }
+            result = false;
+        }
+        return result;
+    }
+    
+    /**
+     * Records that a file is finished.
+     * 
+     * @param path The path of the file, relative to the source tree.
+     * @param entry The entry for the {@link #currentManifest}. May be <code>null</code>.
+     * @param progress The {@link ProgressLogger} to notify about the finished file.
+     */
+    private void finishFile(String path, FileManifest.Entry entry, ProgressLogger progress) {
+        if (entry != null) {
+            currentManifest.put(path, entry);
+        }
+        
+        synchronized (progress) {
+            progress.processedOne();
+        }
+    }
+    
+    /**
+     * Transfers a file that is not a source file, according to the {@link #nonSourceFileStrategy}. If the strategy
+     * fails, a warning is logged and all further files are copied instead. Files for
+     * {@link NonSourceFileStrategy#REFLINK} are only collected here and cloned later by
+     * {@link #reflinkPendingFiles()}.
+     * 
+     * @param from The file to transfer.
+     * @param to The destination file.
+     * 
      * @throws IOException If copying the file fails.
      */
-    private void copySourceFile(File from, File to) throws IOException {
-        PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation copySourceFile()");
-        try (LineNumberReader in = new LineNumberReader(new FileReader(from))) {
+    private void transferNonSourceFile(File from, File to) throws IOException {
+        NonSourceFileStrategy strategy = nonSourceFileStrategy;
+        
+        boolean done = strategy == NonSourceFileStrategy.SKIP;
+        if (strategy == NonSourceFileStrategy.REFLINK) {
+            pendingReflinks.computeIfAbsent(to.getParentFile(), dir -> new ConcurrentLinkedQueue<>()).add(from);
+            done = true;
             
-            try (Writer out = createWriter(to)) {
-                
-                String line;
-                // CHECKSTYLE:OFF // TODO inner assignment
-                while (continueReading(line = in.readLine())) {
-                // CHECKSTYLE:ON
-                    
-                    // get line number here, so that we get the first line if any continuation is appended below
-                    int currentLineNumber = in.getLineNumber();
+        } else if (!done && strategy != NonSourceFileStrategy.COPY) {
+            try {
+                switch (strategy) {
+                case HARD_LINK:
+                    Files.createLink(to.toPath(), from.toPath());
+                    break;
                     
-                    // Replace variable occurrences of #if's and #elif's
-                    if (CPPUtils.isIfOrElifStatement(line)) {
-                        
-                        // Consider continuation
-                        while (line.charAt(line.length() - 1) == '\\') {
-                            line = line.substring(0, line.length() - 1); // remove trailing \
-                            String next = in.readLine();
-                            if (null != next) {
-                                line += next;
-                            } else {
-                                break;
-                            }
-                        }
-                        
-                        line = line.trim();
-                        line = replaceInLine(line, from, currentLineNumber);
-                    }
+                case SYMBOLIC_LINK:
+                    Files.createSymbolicLink(to.toPath(), from.getAbsoluteFile().toPath());
+                    break;
                     
-                    out.write(line);
-                    if (out instanceof BufferedWriter) {
-                        out.write("\n");
+                default:
+                    throw new IOException("Unknown strategy " + strategy);
+                }
+                done = true;
+                
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                disableNonSourceFileStrategy(strategy, e);
+                Files.deleteIfExists(to.toPath());
+            }
+        }
+        
+        if (!done) {
+            Util.copyFile(from, to);
+        }
+    }
+    
+    /**
+     * Logs a warning that the given {@link NonSourceFileStrategy} failed and switches to
+     * {@link NonSourceFileStrategy#COPY} for all further files. Only the first failure is logged.
+     * 
+     * @param strategy The strategy that failed.
+     * @param cause The reason why the strategy failed.
+     */
+    private synchronized void disableNonSourceFileStrategy(NonSourceFileStrategy strategy, Exception cause) {
+        if (nonSourceFileStrategy != NonSourceFileStrategy.COPY) {
+            LOGGER.logWarning("Can't transfer non-source files with strategy " + strategy + "; copying them instead",
+                    cause.toString());
+            nonSourceFileStrategy = NonSourceFileStrategy.COPY;
+        }
+    }
+    
+    /**
+     * Clones all non-source files collected in {@link #pendingReflinks}. The files of each destination directory are
+     * cloned by a single <code>cp --reflink=always</code> process (or one per {@link #REFLINK_BATCH_SIZE} files),
+     * instead of starting a process for each file. If cloning fails, the remaining files are copied instead.
+     * 
+     * @throws IOException If copying a file fails.
+     */
+    private void reflinkPendingFiles() throws IOException {
+        for (Map.Entry<File, Queue<File>> entry : pendingReflinks.entrySet()) {
+            File toDir = entry.getKey();
+            List<File> files = new ArrayList<>(entry.getValue());
+            
+            for (int start = 0; start < files.size(); start += REFLINK_BATCH_SIZE) {
+                List<File> batch = files.subList(start, Math.min(start + REFLINK_BATCH_SIZE, files.size()));
+                
+                boolean done = false;
+                if (nonSourceFileStrategy == NonSourceFileStrategy.REFLINK) {
+                    try {
+                        reflink(batch, toDir);
+                        done = true;
+                    } catch (IOException e) {
+                        disableNonSourceFileStrategy(NonSourceFileStrategy.REFLINK, e);
                     }
                 }
                 
+                if (!done) {
+                    for (File from : batch) {
+                        Util.copyFile(from, new File(toDir, from.getName()));
+                    }
+                }
+            }
+        }
+        pendingReflinks.clear();
+    }
+    
+    /**
+     * Creates copy-on-write clones of the given files in the given directory via a single
+     * <code>cp --reflink=always</code> process.
+     * 
+     * @param files The files to clone. The clones have the same names as the original files.
+     * @param toDir The destination directory.
+     * 
+     * @throws IOException If cp is not available or the file system does not support reflinks.
+     */
+    private static void reflink(List<File> files, File toDir) throws IOException {
+        List<String> command = new ArrayList<>(files.size() + 4);
+        command.add("cp");
+        command.add("--reflink=always");
+        command.add("--");
+        for (File from : files) {
+            command.add(from.getAbsolutePath());
+        }
+        command.add(toDir.getAbsolutePath());
+        
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        
+        // read the output, so that the process does not block
+        byte[] buffer = new byte[1024];
+        try (InputStream in = process.getInputStream()) {
+            int read = in.read(buffer);
+            while (read != -1) {
+                read = in.read(buffer);
             }
+        }
+        
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("cp --reflink=always exited with " + exitCode + " for " + files.size()
+                        + " files in " + toDir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+    
+    /**
+     * Copies a source file (.c or .h) while doing replacements. Reads the file line by line; used if
+     * {@link #allowByteLevelProcessing} is disabled.
+     * 
+     * @param from The file to copy.
+     * @param to The destination.
+     * 
+     * @throws IOException If copying the file fails.
+     */
+    private void copySourceFile(File from, File to) throws IOException {
+        PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation copySourceFile()");
+        try (LineNumberReader in = new LineNumberReader(new FileReader(from));
+                Writer out = createWriter(to)) {
+            
+            rewriteLines(in, out, from);
+            
         } finally {
             p.close();
         }
     }
     
+    /**
+     * Copies the lines of a source file (.c or .h) while doing replacements.
+     * 
+     * @param in The reader for the source file.
+     * @param out The writer for the destination (see {@link #createWriter(File)}).
+     * @param from The source file (used for error messages).
+     * 
+     * @throws IOException If reading or writing fails.
+     */
+    private void rewriteLines(LineNumberReader in, Writer out, File from) throws IOException {
+        String line;
+        // CHECKSTYLE:OFF // TODO inner assignment
+        while (continueReading(line = in.readLine())) {
+        // CHECKSTYLE:ON
+            
+            // get line number here, so that we get the first line if any continuation is appended below
+            int currentLineNumber = in.getLineNumber();
+            
+            // Replace variable occurrences of #if's and #elif's
+            if (CPPUtils.isIfOrElifStatement(line)) {
+                
+                // Consider continuation
+                while (line.charAt(line.length() - 1) == '\\') {
+                    line = line.substring(0, line.length() - 1); // remove trailing \
+                    String next = in.readLine();
+                    if (null != next) {
+                        line += next;
+                    } else {
+                        break;
+                    }
+                }
+                
+                line = line.trim();
+                line = replaceInLine(line, from, currentLineNumber);
+            }
+            
+            out.write(line);
+            if (out instanceof BufferedWriter) {
+                out.write("\n");
+            }
+        }
+    }
+    
+    /**
+     * Copies the given file byte by byte via {@link FileChannel}s, which allows the operating system to transfer the
+     * data without copying it into the JVM.
+     * 
+     * @param from The file to copy.
+     * @param to The destination.
+     * 
+     * @throws IOException If copying the file fails.
+     */
+    private static void transferFile(File from, File to) throws IOException {
+        try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(to.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+    
+    /**
+     * Checks whether the runtime class of this object overrides {@link #continueReading(String)}.
+     * 
+     * @return Whether a sub-class overrides {@link #continueReading(String)}.
+     */
+    private boolean overridesContinueReading() {
+        boolean result = false;
+        for (Class<?> c = getClass(); c != NonBooleanPreperation.class && !result; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("continueReading", String.class);
+                result = true;
+            } catch (NoSuchMethodException e) {
+                // not overridden in this class
+            }
+        }
+        return result;
+    }
+    
     /**
      * Whether we should keep continue reading and do replacements in the source file.
      *  
@@ -282,14 +1291,24 @@ public class NonBooleanPreperation implements IPreparation {
      */
     private String replaceInLine(String line, File from, int lineNumber) {
         String result = removeComments(line);
+        String condition = ReplacementCache.normalize(result);
         
         int originalSize = result.length();
         
         PerformanceProbe p = new PerformanceProbe("NonBooleanPreparation condition conversion");
-        try {
-            result = replacer.replaceCpp(result);
-        } catch (ExpressionFormatException e) {
-            LOGGER.logException("Error while replacing line " + lineNumber + " in " + from + ": " + line, e);
+        String cached = conditionCache != null ? conditionCache.get(condition) : null;
+        if (cached != null) {
+            result = cached;
+        } else {
+            try {
+                result = replacer.replaceCpp(condition);
+                if (conditionCache != null) {
+                    conditionCache.put(condition, result);
+                }
+            } catch (ExpressionFormatException e) {
+                // failures are not cached, so that every occurrence is logged
+                LOGGER.logException("Error while replacing line " + lineNumber + " in " + from + ": " + line, e);
+            }
         }
         
         p.addExtraData("condition growth", (double) result.length() / originalSize);
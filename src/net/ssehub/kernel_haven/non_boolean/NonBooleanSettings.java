@@ -24,6 +24,7 @@ import java.util.regex.Pattern;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.EnumSetting;
 import net.ssehub.kernel_haven.config.Setting;
 import net.ssehub.kernel_haven.config.Setting.Type;
 
@@ -44,6 +45,74 @@ public class NonBooleanSettings {
                 + "the variables that require non-boolean replacements look like. This regex should also cover the "
                 + "names of the constant variables, that should be replaced by their value.");
 
+    public static final Setting<Integer> NUMBER_OF_THREADS
+        = new Setting<>("prepare_non_boolean.threads", Type.INTEGER, true, "1", "The number of worker threads that "
+                + "scan the source files for the heuristic, and copy the source tree and do the non boolean "
+                + "replacements in parallel. If this is greater than 1, a work-stealing thread pool is used to process "
+                + "the files; 1 processes all files sequentially in the calling thread.");
+
+    public static final Setting<Boolean> INCREMENTAL
+        = new Setting<>("prepare_non_boolean.incremental", Type.BOOLEAN, true, "false", "If set to true, a manifest "
+                + "of all copied files is stored in " + DESTINATION_DIR.getKey() + ". A later run on the same "
+                + "destination only processes the files that were added, changed or deleted since the previous run. "
+                + "If the non boolean variables or constants, a setting that affects the output (e.g. how non-source "
+                + "files are transferred) or the version of this plugin changed, the complete source tree is processed "
+                + "again.");
+
+    public static final EnumSetting<NonSourceFileStrategy> NON_SOURCE_FILES
+        = new EnumSetting<>("prepare_non_boolean.non_source_files", NonSourceFileStrategy.class, true,
+                NonSourceFileStrategy.COPY, "Defines how files that are not .c or .h files are transferred into "
+                + DESTINATION_DIR.getKey() + ". COPY copies the files, HARD_LINK and SYMBOLIC_LINK create links to the "
+                + "original files, REFLINK creates copy-on-write clones (if supported by the file system) and SKIP "
+                + "does not transfer them at all. REFLINK starts one cp process for each directory that contains "
+                + "non-source files (and for each 1000 files in it). If creating a link or clone fails, the file is "
+                + "copied instead.");
+
+    public static final Setting<Integer> CONDITION_CACHE_SIZE
+        = new Setting<>("prepare_non_boolean.condition_cache_size", Type.INTEGER, true, "10000", "The maximum number "
+                + "of #if and #elif conditions for which the result of the non boolean replacement is cached. The "
+                + "same conditions are often used in many files, so this avoids parsing and evaluating them again. "
+                + "Set to 0 to disable the cache.");
+
+    public static final EnumSetting<ExecutionMode> EXECUTION_MODE
+        = new EnumSetting<>("prepare_non_boolean.execution_mode", ExecutionMode.class, true,
+                ExecutionMode.THREAD_POOL, "Defines how the files are distributed to threads. THREAD_POOL uses "
+                + NUMBER_OF_THREADS.getKey() + " worker threads. VIRTUAL_THREADS processes each file in its own "
+                + "virtual thread (or a fixed thread pool on Java versions before 21), with at most "
+                + "prepare_non_boolean.max_open_files files at once; this hides the latency of network file systems. "
+                + "PIPELINE reads, transforms and writes the files in separate threads at the same time.");
+
+    public static final Setting<Integer> MAX_OPEN_FILES
+        = new Setting<>("prepare_non_boolean.max_open_files", Type.INTEGER, true, "64", "The maximum number of files "
+                + "that are processed at once if " + EXECUTION_MODE.getKey() + " is VIRTUAL_THREADS.");
+
+    public static final Setting<Integer> QUEUE_CAPACITY
+        = new Setting<>("prepare_non_boolean.queue_capacity", Type.INTEGER, true, "64", "The number of read files "
+                + "that may wait for the replacements, and the number of transformed files that may wait for being "
+                + "written, if " + EXECUTION_MODE.getKey() + " is PIPELINE. Larger values use more memory, but "
+                + "compensate differences in the speed of the stages better.");
+
+    public static final Setting<Boolean> OVERLAY
+        = new Setting<>("prepare_non_boolean.overlay", Type.BOOLEAN, true, "false", "If set to true, only the files "
+                + "that are changed by the replacements (or the removal of #error blocks) are written to "
+                + DESTINATION_DIR.getKey() + ". All other files become symbolic links to the original files (unless "
+                + NON_SOURCE_FILES.getKey() + " specifies another way than COPY for non-source files). If symbolic "
+                + "links are not supported, the files are copied instead.");
+
+    public static final Setting<File> HEURISTIC_CACHE
+        = new Setting<>("prepare_non_boolean.heuristic_cache", Type.PATH, false, null, "A file in which the result "
+                + "of the heuristic for the non boolean variables is cached. If the source files (their paths, sizes "
+                + "and modification times) and " + VARIABLE_REGEX.getKey() + " did not change since the cache was "
+                + "written, the heuristic does not scan the source tree again. The file is created if it does not "
+                + "exist. Not used if the variability model contains integer variables.");
+
+    public static final Setting<Boolean> COMPACT_DOMAINS
+        = new Setting<>("prepare_non_boolean.compact_domains", Type.BOOLEAN, true, "false", "If set to true, the "
+                + "values that the heuristic finds for a variable are reduced to one value per group of values that "
+                + "no comparison in the source files can distinguish. This results in smaller replaced conditions. "
+                + "Variables that are used in any other way than in a comparison with an integer constant (e.g. in "
+                + "arithmetic) are not reduced.");
+
     /**
      * Holds all declared setting constants.
      */
@@ -19,7 +19,8 @@ import java.util.Arrays;
 import java.util.Set;
 
 /**
- * A non-boolean variable. This variable has a name and a set of allowed integer values.
+ * A non-boolean variable. This variable has a name and a set of allowed integer values. The values are stored as a
+ * sorted array of primitive <code>long</code>s.
  * 
  * @author Adam
  */
@@ -51,19 +52,33 @@ public final class NonBooleanVariable {
     public NonBooleanVariable(String name, Set<Long> constants, boolean infinite) {
         this.name = name;
         
-        this.constants = new long[constants.size()];
-        int i = 0;
+        LongSet values = new LongSet(constants.size());
         for (Long c : constants) {
-            this.constants[i++] = c;
+            values.add(c);
         }
+        this.constants = values.toSortedArray();
         
         this.infinite = infinite;
     }
     
+    /**
+     * Creates this {@link NonBooleanVariable}.
+     * 
+     * @param name The name of this variable.
+     * @param constants The allowed constants, in ascending order and without duplicates (e.g. from
+     *      {@link LongSet#toSortedArray()}). The array is not copied.
+     * @param infinite Whether this is an infinite integer or not. constants is ignored in this case.
+     */
+    public NonBooleanVariable(String name, long[] constants, boolean infinite) {
+        this.name = name;
+        this.constants = constants;
+        this.infinite = infinite;
+    }
+    
     /**
      * Returns the allowed constants of this variable.
      * 
-     * @return The allowed constants.
+     * @return The allowed constants, in ascending order.
      */
     public long[] getConstants() {
         return constants;
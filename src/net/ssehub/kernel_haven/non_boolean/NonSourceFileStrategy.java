@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+/**
+ * Defines how the {@link NonBooleanPreperation} transfers files that are not C source files (i.e. not .c or .h) into
+ * the copied source tree. If a strategy is not supported for a file (e.g. hard links across file systems), then the
+ * file is copied instead.
+ *
+ * @author Adam
+ */
+public enum NonSourceFileStrategy {
+    
+    /**
+     * Copies the complete file.
+     */
+    COPY,
+    
+    /**
+     * Creates a hard link to the original file. Only possible if both source trees are on the same file system.
+     */
+    HARD_LINK,
+    
+    /**
+     * Creates a symbolic link to the absolute path of the original file.
+     */
+    SYMBOLIC_LINK,
+    
+    /**
+     * Creates a copy-on-write clone of the original file via <code>cp --reflink=always</code>. Only supported by
+     * some file systems (e.g. Btrfs, XFS) and requires GNU cp. The files are cloned after all source files are
+     * processed, with one cp process per destination directory (and per 1000 files), to avoid starting a process for
+     * each file.
+     */
+    REFLINK,
+    
+    /**
+     * Does not transfer non-source files at all.
+     */
+    SKIP,
+    
+}
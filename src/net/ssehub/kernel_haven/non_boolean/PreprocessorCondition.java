@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+/**
+ * An <code>#if</code> or <code>#elif</code> condition found by the {@link PreprocessorConditionVisitor}, together with
+ * its position in the source file. A condition may span multiple physical lines, if the lines are continued with a
+ * backslash. Immutable.
+ *
+ * @author Adam
+ */
+public final class PreprocessorCondition {
+    
+    private int line;
+    
+    private long offset;
+    
+    private int lineCount;
+    
+    private int length;
+    
+    private String text;
+    
+    /**
+     * Creates a condition.
+     * 
+     * @param line The line number where the condition starts (1-based).
+     * @param offset The byte offset of the start of the first line in the file.
+     * @param lineCount The number of physical lines of the condition; greater than 1 if lines are continued.
+     * @param length The number of bytes from the offset to the end of the last line (excluding the line terminator).
+     * @param text The trimmed condition, with all continued lines appended.
+     */
+    public PreprocessorCondition(int line, long offset, int lineCount, int length, String text) {
+        this.line = line;
+        this.offset = offset;
+        this.lineCount = lineCount;
+        this.length = length;
+        this.text = text;
+    }
+    
+    /**
+     * Returns the line number where this condition starts.
+     * 
+     * @return The 1-based line number of the first line.
+     */
+    public int getLine() {
+        return line;
+    }
+    
+    /**
+     * Returns the byte offset of the start of the first line in the file. This is the start of the physical line,
+     * i.e. before any leading whitespace.
+     * 
+     * @return The byte offset of this condition.
+     */
+    public long getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Returns the number of physical lines that this condition spans.
+     * 
+     * @return The number of lines; 1 if the condition is not continued.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+    
+    /**
+     * Returns the number of bytes that this condition spans in the file, starting at {@link #getOffset()}. This
+     * includes line terminators between continued lines, but not the terminator of the last line.
+     * 
+     * @return The length of this condition, in bytes.
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Returns the text of this condition. Same as the line passed to
+     * {@link PreprocessorConditionVisitor#visit(java.io.File, String)}.
+     * 
+     * @return The trimmed condition, with all continued lines appended.
+     */
+    public String getText() {
+        return text;
+    }
+    
+    @Override
+    public String toString() {
+        return "PreprocessorCondition[line=" + line + ", offset=" + offset + ", lineCount=" + lineCount + ", length="
+                + length + ", text=" + text + "]";
+    }
+    
+}
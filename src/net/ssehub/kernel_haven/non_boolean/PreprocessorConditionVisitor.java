@@ -15,64 +15,337 @@
  */
 package net.ssehub.kernel_haven.non_boolean;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-// TODO: tidy up this temporary hack
-// CHECKSTYLE:OFF
-
+/**
+ * Visits all <code>#if</code> and <code>#elif</code> conditions in C source files (.c and .h files). Lines continued
+ * with a backslash are joined into a single condition.
+ * <p>
+ * Sub-classes override one of the two callbacks: {@link #visitConditions(File, List)} receives all conditions of a
+ * file at once, together with their positions ({@link PreprocessorCondition}); this allows per-file bulk work, such as
+ * indexing the conditions or handing a whole file to a worker as one unit. {@link #visit(File, String)} is called once
+ * per condition with only its text; by default, {@link #visitConditions(File, List)} delegates to it.
+ * <p>
+ * The files can be visited sequentially in the calling thread ({@link #visitAllFiles(File)},
+ * {@link #visitFiles(Iterable)}) or by a number of worker threads ({@link #visitAllFiles(File, int)},
+ * {@link #visitFiles(Iterable, int)}). In the parallel mode, the following threading contract applies to both
+ * callbacks:
+ * <ul>
+ *      <li>They may be called concurrently from different worker threads, thus implementations must be thread-safe
+ *      (e.g. by collecting into thread-safe or per-thread data structures).</li>
+ *      <li>All conditions of one file are visited by the same thread, in the order they appear in the file.</li>
+ *      <li>There is no order between the conditions of different files.</li>
+ *      <li>All calls have finished when the <code>visit*Files()</code> method returns or throws.</li>
+ * </ul>
+ *
+ * @author Adam
+ */
 public abstract class PreprocessorConditionVisitor {
     
+    /**
+     * Visits all source files in the given directory (recursively) in the calling thread.
+     * 
+     * @param directory The directory to walk through.
+     * 
+     * @throws IOException If walking the directory or reading a source file fails.
+     */
     public void visitAllFiles(File directory) throws IOException {
+        visitAllFiles(directory, 1);
+    }
+    
+    /**
+     * Visits all source files in the given directory (recursively) with the given number of worker threads. See the
+     * class comment for the threading contract of the callbacks.
+     * 
+     * @param directory The directory to walk through.
+     * @param parallelism The number of threads that visit the files; must be at least 1. 1 means that the files are
+     *      visited in the calling thread.
+     * 
+     * @throws IOException If walking the directory or reading a source file fails.
+     * @throws IllegalArgumentException If parallelism is less than 1.
+     */
+    public void visitAllFiles(File directory, int parallelism) throws IOException, IllegalArgumentException {
+        List<File> files;
+        try (Stream<Path> paths = Files.walk(directory.toPath(), FileVisitOption.FOLLOW_LINKS)) {
+            files = paths.map(Path::toFile).collect(Collectors.toList());
+        }
+        visitFiles(files, parallelism);
+    }
+
+    /**
+     * Visits the given files in the calling thread, e.g. the ones collected in a {@link SourceTreeIndex}. Files that
+     * are not .c or .h files are ignored.
+     * 
+     * @param files The files to visit.
+     * 
+     * @throws IOException If reading a source file fails.
+     */
+    public void visitFiles(Iterable<File> files) throws IOException {
+        for (File file : files) {
+            visitFile(file);
+        }
+    }
+    
+    /**
+     * Visits the given files with the given number of worker threads. Each worker takes the next file that is not
+     * visited yet, until all files are visited. Files that are not .c or .h files are ignored. See the class comment
+     * for the threading contract of the callbacks.
+     * <p>
+     * If visiting a file fails in one of the workers, no further files are handed out and the remaining workers
+     * finish their current file. The first failure is then re-thrown in the calling thread; failures of other workers
+     * are attached to it as suppressed exceptions.
+     * 
+     * @param files The files to visit.
+     * @param parallelism The number of threads that visit the files; must be at least 1. 1 means that the files are
+     *      visited in the calling thread.
+     * 
+     * @throws IOException If reading a source file fails.
+     * @throws IllegalArgumentException If parallelism is less than 1.
+     */
+    public void visitFiles(Iterable<File> files, int parallelism) throws IOException, IllegalArgumentException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but is " + parallelism);
+        }
+        
+        List<File> fileList = new ArrayList<>();
+        files.forEach(fileList::add);
+        
+        if (parallelism == 1 || fileList.size() <= 1) {
+            visitFiles(fileList);
+        } else {
+            visitFilesParallel(fileList, Math.min(parallelism, fileList.size()));
+        }
+    }
+    
+    /**
+     * Visits the given files with the given number of worker threads.
+     * 
+     * @param files The files to visit.
+     * @param numWorkers The number of worker threads to start.
+     * 
+     * @throws IOException If reading a source file fails.
+     */
+    private void visitFilesParallel(List<File> files, int numWorkers) throws IOException {
+        AtomicInteger nextFile = new AtomicInteger();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        
+        Thread[] workers = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Thread(() -> {
+                int index = nextFile.getAndIncrement();
+                while (index < files.size() && failures.isEmpty()) {
+                    try {
+                        visitFile(files.get(index));
+                    } catch (IOException | RuntimeException | Error e) {
+                        failures.add(e);
+                    }
+                    index = nextFile.getAndIncrement();
+                }
+            }, "PreprocessorConditionVisitor-" + i);
+            workers[i].start();
+        }
+        
         try {
-            Files.walk(directory.toPath(), FileVisitOption.FOLLOW_LINKS).forEach((file) -> {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            // stop handing out files and wait for the workers to finish their current file
+            nextFile.set(files.size());
+            joinUninterruptibly(workers);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while visiting source files");
+        }
+        
+        if (!failures.isEmpty()) {
+            throwFailures(failures);
+        }
+    }
+    
+    /**
+     * Waits for all given threads to finish, even if the current thread is interrupted.
+     * 
+     * @param threads The threads to wait for.
+     */
+    private static void joinUninterruptibly(Thread[] threads) {
+        for (Thread thread : threads) {
+            boolean joined = false;
+            while (!joined) {
                 try {
-                    visiFile(file.toFile());
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+                    thread.join();
+                    joined = true;
+                } catch (InterruptedException e) {
+                    // try again; the caller restores the interrupt flag
                 }
-            });
-        } catch (UncheckedIOException e) {
-            throw e.getCause();
+            }
         }
     }
-
-    public void visiFile(File file) throws IOException {
-        if (!file.isFile() || (!file.getName().endsWith(".c") && !file.getName().endsWith(".h"))) {
-            return;
+    
+    /**
+     * Throws the first of the given failures, with all other failures added as suppressed exceptions.
+     * 
+     * @param failures The failures of the workers, in the order they occurred. Must not be empty.
+     * 
+     * @throws IOException If the first failure is an {@link IOException}.
+     */
+    private static void throwFailures(List<Throwable> failures) throws IOException {
+        Throwable first = failures.get(0);
+        for (Throwable other : failures.subList(1, failures.size())) {
+            first.addSuppressed(other);
+        }
+        
+        if (first instanceof IOException) {
+            throw (IOException) first;
+        } else if (first instanceof RuntimeException) {
+            throw (RuntimeException) first;
+        } else {
+            throw (Error) first;
+        }
+    }
+    
+    /**
+     * Visits all <code>#if</code> and <code>#elif</code> conditions in the given file. Files that are not .c or .h
+     * files are ignored. For source files, {@link #visitConditions(File, List)} is called exactly once, even if the
+     * file contains no conditions.
+     * 
+     * @param file The file to visit.
+     * 
+     * @throws IOException If reading the file fails.
+     */
+    public void visitFile(File file) throws IOException {
+        if (file.isFile() && (file.getName().endsWith(".c") || file.getName().endsWith(".h"))) {
+            visitConditions(file, findConditions(Files.readAllBytes(file.toPath())));
         }
+    }
+    
+    /**
+     * Finds all <code>#if</code> and <code>#elif</code> conditions in the given file content. Lines are terminated by
+     * <code>\n</code>, <code>\r</code> or <code>\r\n</code>. Only the lines of conditions are decoded, using the
+     * default charset of the platform.
+     * 
+     * @param content The content of the source file.
+     * 
+     * @return The conditions, in the order they appear in the content.
+     */
+    static List<PreprocessorCondition> findConditions(byte[] content) {
+        Charset charset = Charset.defaultCharset();
+        List<PreprocessorCondition> result = new ArrayList<>();
         
-        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+        int lineNumber = 1;
+        int start = 0;
+        while (start < content.length) {
+            int end = getEndOfLine(content, start);
+            int next = getStartOfNextLine(content, end);
             
-            String line;
-            while ((line = in.readLine()) != null) {
-                line = line.trim();
-                
-                if (!CPPUtils.isIfOrElifStatement(line)) {
-                    continue;
-                }
+            CppDirective directive = CppDirective.classify(content, start, end);
+            if (directive == CppDirective.IF || directive == CppDirective.ELIF) {
+                int firstLine = lineNumber;
+                StringBuilder text = new StringBuilder(new String(content, start, end - start, charset).trim());
                 
                 // Consider continuation
-                while (line.charAt(line.length() - 1) == '\\') {
-                    String tmp = in.readLine();
-                    if (null != tmp) {
-                        line += tmp;
-                    } else {
-                        break;
-                    }
+                while (text.charAt(text.length() - 1) == '\\' && next < content.length) {
+                    end = getEndOfLine(content, next);
+                    text.append(new String(content, next, end - next, charset));
+                    next = getStartOfNextLine(content, end);
+                    lineNumber++;
                 }
                 
-                visit(file, line);
+                result.add(new PreprocessorCondition(firstLine, start, lineNumber - firstLine + 1, end - start,
+                        text.toString()));
             }
             
+            start = next;
+            lineNumber++;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Finds the end of the line that starts at the given index.
+     * 
+     * @param content The content to search in.
+     * @param start The start of the line.
+     * 
+     * @return The index of the line terminator, or the length of the content if the line is not terminated.
+     */
+    private static int getEndOfLine(byte[] content, int start) {
+        int end = start;
+        while (end < content.length && content[end] != '\n' && content[end] != '\r') {
+            end++;
+        }
+        return end;
+    }
+    
+    /**
+     * Skips the line terminator at the given index.
+     * 
+     * @param content The content.
+     * @param end The index of the line terminator, see {@link #getEndOfLine(byte[], int)}.
+     * 
+     * @return The start of the next line.
+     */
+    private static int getStartOfNextLine(byte[] content, int end) {
+        int next = end;
+        if (next < content.length && content[next] == '\r') {
+            next++;
+        }
+        if (next < content.length && content[next] == '\n') {
+            next++;
         }
+        return next;
     }
     
-    public abstract void visit(File file, String line);
+    /**
+     * Visits the given file. Same as {@link #visitFile(File)}.
+     * 
+     * @param file The file to visit.
+     * 
+     * @throws IOException If reading the file fails.
+     * 
+     * @deprecated Use {@link #visitFile(File)} instead.
+     */
+    @Deprecated
+    public void visiFile(File file) throws IOException {
+        visitFile(file);
+    }
+    
+    /**
+     * Called once per visited source file with all <code>#if</code> and <code>#elif</code> conditions of it. The
+     * default implementation calls {@link #visit(File, String)} for each condition. See the class comment for the
+     * threading contract in the parallel mode.
+     * 
+     * @param file The file that contains the conditions.
+     * @param conditions The conditions, in the order they appear in the file. May be empty.
+     */
+    public void visitConditions(File file, List<PreprocessorCondition> conditions) {
+        for (PreprocessorCondition condition : conditions) {
+            visit(file, condition.getText());
+        }
+    }
+    
+    /**
+     * Called for each <code>#if</code> or <code>#elif</code> condition, unless {@link #visitConditions(File, List)}
+     * is overridden. The default implementation does nothing. See the class comment for the threading contract in
+     * the parallel mode.
+     * 
+     * @param file The file that contains the condition.
+     * @param line The trimmed line of the condition, with all continued lines appended.
+     */
+    public void visit(File file, String line) {
+        // nothing to do by default
+    }
     
 }
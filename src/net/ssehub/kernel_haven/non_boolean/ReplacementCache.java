@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache for the results of the non boolean replacements of C preprocessor conditions. The same conditions
+ * occur very often in large source trees, so this avoids parsing and evaluating them again.
+ * <p>
+ * The cache is split into stripes, each of which is a least-recently-used map guarded by its own lock. Thus, it can
+ * be used by multiple threads at once with little contention. The number of hits, misses and evictions is counted.
+ *
+ * @author Adam
+ */
+class ReplacementCache {
+    
+    private static final int MAX_STRIPES = 16;
+    
+    private List<Map<String, String>> stripes;
+    
+    private LongAdder hits;
+    
+    private LongAdder misses;
+    
+    private LongAdder evictions;
+    
+    /**
+     * Creates an empty cache.
+     * 
+     * @param maxSize The maximum number of cached conditions. Must be at least 1.
+     */
+    ReplacementCache(int maxSize) {
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        
+        int numStripes = Math.min(MAX_STRIPES, maxSize);
+        int stripeSize = (maxSize + numStripes - 1) / numStripes;
+        
+        this.stripes = new ArrayList<>(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            stripes.add(new LinkedHashMap<String, String>(16, 0.75f, true) {
+                
+                private static final long serialVersionUID = 3316327451870436549L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    boolean remove = size() > stripeSize;
+                    if (remove) {
+                        evictions.increment();
+                    }
+                    return remove;
+                }
+                
+            });
+        }
+    }
+    
+    /**
+     * Returns the stripe that is responsible for the given condition.
+     * 
+     * @param condition The condition.
+     * 
+     * @return The stripe for the condition.
+     */
+    private Map<String, String> getStripe(String condition) {
+        int hash = condition.hashCode();
+        hash ^= hash >>> 16;
+        return stripes.get((hash & Integer.MAX_VALUE) % stripes.size());
+    }
+    
+    /**
+     * Returns the cached replacement for the given condition.
+     * 
+     * @param condition The normalized condition, see {@link #normalize(String)}.
+     * 
+     * @return The cached replacement, or <code>null</code> if the condition is not cached.
+     */
+    String get(String condition) {
+        Map<String, String> stripe = getStripe(condition);
+        String result;
+        synchronized (stripe) {
+            result = stripe.get(condition);
+        }
+        
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+    
+    /**
+     * Caches the replacement for the given condition. May evict the least recently used condition.
+     * 
+     * @param condition The normalized condition, see {@link #normalize(String)}.
+     * @param replacement The result of the replacement.
+     */
+    void put(String condition, String replacement) {
+        Map<String, String> stripe = getStripe(condition);
+        synchronized (stripe) {
+            stripe.put(condition, replacement);
+        }
+    }
+    
+    /**
+     * Returns the number of successful lookups.
+     * 
+     * @return The number of cache hits.
+     */
+    long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Returns the number of failed lookups.
+     * 
+     * @return The number of cache misses.
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Returns the number of conditions that were removed to stay within the maximum size.
+     * 
+     * @return The number of evictions.
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+    
+    /**
+     * Normalizes the whitespace in the given condition: leading and trailing whitespace is removed and all other
+     * runs of whitespace are replaced by a single space. Whitespace between a leading <tt>#</tt> and the directive is
+     * removed, so that the result starts with <tt>#if</tt> or <tt>#elif</tt>. This does not change the meaning of the
+     * condition.
+     * 
+     * @param condition The condition (without comments) to normalize.
+     * 
+     * @return The normalized condition.
+     */
+    static String normalize(String condition) {
+        String trimmed = condition.trim();
+        if (trimmed.length() > 1 && trimmed.charAt(0) == '#' && trimmed.charAt(1) <= ' ') {
+            trimmed = "#" + trimmed.substring(1).trim();
+        }
+        StringBuilder result = null;
+        
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            boolean whitespace = c <= ' ';
+            
+            if (whitespace && result == null && (c != ' ' || trimmed.charAt(i + 1) <= ' ')) {
+                // first non-normalized whitespace; the trimmed string can't end with whitespace
+                result = new StringBuilder(trimmed.length());
+                result.append(trimmed, 0, i);
+            }
+            
+            if (result != null) {
+                if (!whitespace) {
+                    result.append(c);
+                } else if (result.charAt(result.length() - 1) != ' ') {
+                    result.append(' ');
+                }
+            }
+        }
+        
+        return result != null ? result.toString() : trimmed;
+    }
+    
+}
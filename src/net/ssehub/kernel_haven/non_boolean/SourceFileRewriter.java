@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Rewrites the #if and #elif lines of a source file on the byte level. The complete file is read into a buffer, and
+ * all lines that are not #if or #elif lines are copied as byte ranges; only the #if and #elif lines are decoded into
+ * {@link String}s. Decoding uses {@link #CHARSET}, which maps every byte to exactly one character, so the bytes of
+ * all lines are kept exactly, regardless of their encoding.
+ * <p>
+ * The result is the same as reading the file line by line and writing each line with a trailing <tt>\n</tt>: line
+ * terminators are converted to <tt>\n</tt>, and the last line always ends with a <tt>\n</tt>.
+ * <p>
+ * The buffers are re-used for all files, so one instance should be used per thread.
+ *
+ * @author Adam
+ */
+class SourceFileRewriter {
+    
+    /**
+     * The charset used to decode and encode the lines that are rewritten.
+     */
+    static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+    
+    /**
+     * Replaces a single (trimmed) #if or #elif line, including all continuations.
+     */
+    interface ConditionReplacer {
+        
+        /**
+         * Replaces the given line.
+         * 
+         * @param line The trimmed line, with continuations already appended.
+         * @param lineNumber The number of the first line, starting at 1.
+         * 
+         * @return The replaced line, without a line terminator.
+         */
+        String replace(String line, int lineNumber);
+        
+    }
+    
+    /**
+     * A {@link ByteArrayOutputStream} that allows access to its buffer, to avoid copying it.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+        
+        /**
+         * Creates an empty output.
+         * 
+         * @param size The initial size of the buffer.
+         */
+        Output(int size) {
+            super(size);
+        }
+        
+        /**
+         * Writes the current content to the given stream, without copying the buffer.
+         * 
+         * @param out The stream to write to.
+         * 
+         * @throws IOException If writing fails.
+         */
+        void writeContent(OutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+        
+        /**
+         * Returns the internal buffer. Only the first {@link #size()} bytes are valid.
+         * 
+         * @return The internal buffer.
+         */
+        byte[] getBuffer() {
+            return buf;
+        }
+        
+    }
+    
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    
+    private byte[] input;
+    
+    private int inputLength;
+    
+    private Output output;
+    
+    /**
+     * Creates a rewriter with empty buffers.
+     */
+    SourceFileRewriter() {
+        this.input = new byte[INITIAL_BUFFER_SIZE];
+        this.output = new Output(INITIAL_BUFFER_SIZE);
+    }
+    
+    /**
+     * Reads the complete content of the given file into the input buffer.
+     * 
+     * @param file The file to read.
+     * 
+     * @throws IOException If reading the file fails, or it is larger than 2 GiB.
+     */
+    void read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File is too large: " + file);
+            }
+            if (size > input.length) {
+                input = new byte[(int) size];
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(input, 0, (int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full or the end of the file is reached
+            }
+            inputLength = buffer.position();
+        }
+    }
+    
+    /**
+     * Returns the content of the file that was last read.
+     * 
+     * @return A stream of the input buffer.
+     */
+    InputStream getInput() {
+        return new ByteArrayInputStream(input, 0, inputLength);
+    }
+    
+    /**
+     * Clears the output buffer.
+     * 
+     * @return The output buffer, for writing a result that is not created by {@link #rewrite(ConditionReplacer)}.
+     */
+    OutputStream resetOutput() {
+        output.reset();
+        return output;
+    }
+    
+    /**
+     * Writes the output buffer to the given file.
+     * 
+     * @param file The destination file. Overwritten if it already exists.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    void writeOutput(File file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            output.writeContent(out);
+        }
+    }
+    
+    /**
+     * Checks whether the output buffer contains exactly the same bytes as the input buffer, i.e. whether the
+     * rewriting did not change anything.
+     * 
+     * @return Whether the output is the same as the input.
+     */
+    boolean isOutputUnchanged() {
+        boolean result = output.size() == inputLength;
+        byte[] out = output.getBuffer();
+        for (int i = 0; result && i < inputLength; i++) {
+            result = out[i] == input[i];
+        }
+        return result;
+    }
+    
+    /**
+     * Checks whether the file that was last read contains an <tt>#error</tt> line. This uses the same
+     * {@link CppDirective} classification as the {@link CppBufferedWriter}.
+     * 
+     * @return Whether the input contains an <tt>#error</tt> line.
+     */
+    boolean containsErrorDirective() {
+        boolean result = false;
+        int lineStart = 0;
+        while (lineStart < inputLength && !result) {
+            int lineEnd = findLineEnd(lineStart);
+            result = CppDirective.classify(input, lineStart, lineEnd) == CppDirective.ERROR;
+            lineStart = nextLineStart(lineEnd);
+        }
+        return result;
+    }
+    
+    /**
+     * Rewrites the file that was last read into the output buffer. All lines for which
+     * {@link CPPUtils#isIfOrElifStatement(String)} is true are replaced by the given replacer.
+     * 
+     * @param replacer The replacer to use for the #if and #elif lines.
+     * 
+     * @throws IOException If writing to the output buffer fails.
+     */
+    void rewrite(ConditionReplacer replacer) throws IOException {
+        output.reset();
+        
+        int lineNumber = 0;
+        int lineStart = 0;
+        while (lineStart < inputLength) {
+            int lineEnd = findLineEnd(lineStart);
+            lineNumber++;
+            int nextLineStart = nextLineStart(lineEnd);
+            
+            CppDirective directive = CppDirective.classify(input, lineStart, lineEnd);
+            String line = null;
+            if (directive == CppDirective.IF || directive == CppDirective.ELIF) {
+                line = new String(input, lineStart, lineEnd - lineStart, CHARSET);
+            }
+            
+            if (line != null) {
+                int firstLineNumber = lineNumber;
+                
+                // Consider continuation
+                while (line.charAt(line.length() - 1) == '\\') {
+                    line = line.substring(0, line.length() - 1); // remove trailing \
+                    if (nextLineStart < inputLength) {
+                        lineEnd = findLineEnd(nextLineStart);
+                        lineNumber++;
+                        line += new String(input, nextLineStart, lineEnd - nextLineStart, CHARSET);
+                        nextLineStart = nextLineStart(lineEnd);
+                    } else {
+                        break;
+                    }
+                }
+                
+                output.write(replacer.replace(line.trim(), firstLineNumber).getBytes(CHARSET));
+                
+            } else {
+                output.write(input, lineStart, lineEnd - lineStart);
+            }
+            output.write('\n');
+            
+            lineStart = nextLineStart;
+        }
+    }
+    
+    /**
+     * Finds the end of the line that starts at the given index.
+     * 
+     * @param lineStart The index of the first byte of the line.
+     * 
+     * @return The index of the line terminator (<tt>\n</tt> or <tt>\r</tt>), or the end of the input.
+     */
+    private int findLineEnd(int lineStart) {
+        int i = lineStart;
+        while (i < inputLength && input[i] != '\n' && input[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Returns the start of the line after the given line end. Treats <tt>\r\n</tt> as a single terminator.
+     * 
+     * @param lineEnd The index of the line terminator, as returned by {@link #findLineEnd(int)}.
+     * 
+     * @return The index of the first byte of the next line.
+     */
+    private int nextLineStart(int lineEnd) {
+        int result = lineEnd + 1;
+        if (lineEnd < inputLength && input[lineEnd] == '\r' && result < inputLength && input[result] == '\n') {
+            result++;
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.Logger;
+
+/**
+ * A list of all directories and files in a source tree. The source tree is walked only once (following symbolic
+ * links) and the result is re-used by all phases of the {@link NonBooleanPreperation}: the heuristic, the progress
+ * logging and the copying.
+ *
+ * @author Adam
+ */
+public class SourceTreeIndex {
+    
+    private static final Logger LOGGER = Logger.get();
+    
+    /**
+     * A single directory or file in the source tree.
+     */
+    public static final class Entry {
+        
+        private File file;
+        
+        private String relativePath;
+        
+        private boolean directory;
+        
+        private long size;
+        
+        private long lastModified;
+        
+        /**
+         * Creates an entry.
+         * 
+         * @param file The directory or file.
+         * @param relativePath The path relative to the root of the source tree.
+         * @param directory Whether this is a directory.
+         * @param size The size of the file, in bytes.
+         * @param lastModified The last modification time, in milliseconds since the epoch.
+         */
+        private Entry(File file, String relativePath, boolean directory, long size, long lastModified) {
+            this.file = file;
+            this.relativePath = relativePath;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+        
+        /**
+         * Returns the directory or file.
+         * 
+         * @return The directory or file, inside of the root of the source tree.
+         */
+        public File getFile() {
+            return file;
+        }
+        
+        /**
+         * Returns the path relative to the root of the source tree.
+         * 
+         * @return The relative path.
+         */
+        public String getRelativePath() {
+            return relativePath;
+        }
+        
+        /**
+         * Returns whether this is a directory.
+         * 
+         * @return Whether this is a directory.
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+        
+        /**
+         * Returns the size of the file at the time the source tree was walked.
+         * 
+         * @return The size of the file, in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+        
+        /**
+         * Returns the last modification time of the file at the time the source tree was walked.
+         * 
+         * @return The last modification time, in milliseconds since the epoch.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+        
+        /**
+         * Returns whether this is a C source file (.c or .h).
+         * 
+         * @return Whether this is a C source file.
+         */
+        public boolean isSourceFile() {
+            return !directory && (file.getName().endsWith(".c") || file.getName().endsWith(".h"));
+        }
+        
+        @Override
+        public String toString() {
+            return relativePath;
+        }
+        
+    }
+    
+    private File root;
+    
+    private List<Entry> directories;
+    
+    private List<Entry> files;
+    
+    /**
+     * Creates an index.
+     * 
+     * @param root The root directory of the source tree.
+     * @param directories The directories in the source tree (excluding the root), parents before their children.
+     * @param files The files in the source tree.
+     */
+    private SourceTreeIndex(File root, List<Entry> directories, List<Entry> files) {
+        this.root = root;
+        this.directories = Collections.unmodifiableList(directories);
+        this.files = Collections.unmodifiableList(files);
+    }
+    
+    /**
+     * Walks the given source tree and creates the index. Symbolic links are followed; files that can not be visited
+     * (e.g. because of a link cycle) are logged and ignored.
+     * 
+     * @param root The root directory of the source tree.
+     * 
+     * @return The index of all directories and files in the source tree.
+     * 
+     * @throws IOException If walking the source tree fails.
+     */
+    public static SourceTreeIndex create(File root) throws IOException {
+        Path rootPath = root.toPath();
+        List<Entry> directories = new ArrayList<>();
+        List<Entry> files = new ArrayList<>();
+        
+        Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+            
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(rootPath)) {
+                    directories.add(createEntry(dir, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    files.add(createEntry(file, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                if (file.equals(rootPath)) {
+                    throw exc;
+                }
+                LOGGER.logWarning("Can't visit " + file + ": " + exc.toString());
+                return FileVisitResult.CONTINUE;
+            }
+            
+            /**
+             * Creates the entry for the given directory or file.
+             * 
+             * @param path The directory or file.
+             * @param attrs The attributes of the directory or file.
+             * 
+             * @return The entry.
+             */
+            private Entry createEntry(Path path, BasicFileAttributes attrs) {
+                return new Entry(path.toFile(), rootPath.relativize(path).toString(), attrs.isDirectory(),
+                        attrs.size(), attrs.lastModifiedTime().toMillis());
+            }
+            
+        });
+        
+        return new SourceTreeIndex(root, directories, files);
+    }
+    
+    /**
+     * Returns the root directory of the source tree.
+     * 
+     * @return The root directory.
+     */
+    public File getRoot() {
+        return root;
+    }
+    
+    /**
+     * Returns all directories in the source tree, excluding the root. Parent directories come before their children.
+     * 
+     * @return An unmodifiable list of all directories.
+     */
+    public List<Entry> getDirectories() {
+        return directories;
+    }
+    
+    /**
+     * Returns all files in the source tree.
+     * 
+     * @return An unmodifiable list of all files.
+     */
+    public List<Entry> getFiles() {
+        return files;
+    }
+    
+    /**
+     * Returns all C source files (.c and .h) in the source tree.
+     * 
+     * @return A list of all source files.
+     */
+    public List<File> getSourceFiles() {
+        List<File> result = new ArrayList<>();
+        for (Entry entry : files) {
+            if (entry.isSourceFile()) {
+                result.add(entry.getFile());
+            }
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean.heuristic;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.non_boolean.LongSet;
+import net.ssehub.kernel_haven.util.Logger;
+
+/**
+ * Reduces the values that the {@link NonBooleanHeuristic} found for a variable to one value per equivalence class.
+ * Two values are equivalent if every comparison of the variable found in the source files has the same outcome for
+ * both of them. The comparisons cut the integer line into regions (e.g. <code>VAR &lt; 5</code> cuts between 4 and
+ * 5, <code>VAR == 3</code> cuts before 3 and after 3); values in the same region are equivalent, so only the smallest
+ * one of them is kept.
+ * <p>
+ * This is only correct if the variable is used in nothing but the recorded comparisons (and
+ * <code>defined()</code>). Variables that appear anywhere else, e.g. in arithmetic or in a comparison with another
+ * variable, are marked with {@link #addUncomparedUse(String)} and keep all of their values. Additionally, every
+ * compacted domain is verified against all recorded comparisons before it is used.
+ * <p>
+ * This class is not thread-safe; each worker of the heuristic uses its own instance, which are merged with
+ * {@link #merge(DomainCompactor)}.
+ *
+ * @author Adam
+ */
+final class DomainCompactor {
+    
+    private static final Logger LOGGER = Logger.get();
+    
+    private static final int EQ = 0;
+    private static final int NE = 1;
+    private static final int LE = 2;
+    private static final int GE = 3;
+    private static final int LT = 4;
+    private static final int GT = 5;
+    private static final int NUM_OPERATORS = 6;
+    
+    /**
+     * The constants of all comparisons per variable, indexed by operator.
+     */
+    private Map<String, LongSet[]> comparisons;
+    
+    /**
+     * The variables that are used outside of the recorded comparisons and thus must not be compacted.
+     */
+    private Set<String> uncomparedUses;
+    
+    /**
+     * Creates an empty compactor.
+     */
+    DomainCompactor() {
+        this.comparisons = new HashMap<>();
+        this.uncomparedUses = new HashSet<>();
+    }
+    
+    /**
+     * Records a comparison of the given variable with a constant.
+     * 
+     * @param variable The name of the variable.
+     * @param operator The comparison operator, with the variable on the left side. One of <code>==</code>,
+     *      <code>!=</code>, <code>&lt;=</code>, <code>&gt;=</code>, <code>&lt;</code> or <code>&gt;</code>.
+     * @param constant The constant that the variable is compared with.
+     */
+    void addComparison(String variable, String operator, long constant) {
+        LongSet[] constants = comparisons.get(variable);
+        if (constants == null) {
+            constants = new LongSet[NUM_OPERATORS];
+            comparisons.put(variable, constants);
+        }
+        
+        int index = getOperatorIndex(operator);
+        if (constants[index] == null) {
+            constants[index] = new LongSet();
+        }
+        constants[index].add(constant);
+    }
+    
+    /**
+     * Records that the given variable is used outside of a comparison with a constant. Its values will not be
+     * compacted.
+     * 
+     * @param variable The name of the variable.
+     */
+    void addUncomparedUse(String variable) {
+        uncomparedUses.add(variable);
+    }
+    
+    /**
+     * Adds all comparisons and uses recorded by the other compactor to this one.
+     * 
+     * @param other The compactor to merge into this one.
+     */
+    void merge(DomainCompactor other) {
+        for (Map.Entry<String, LongSet[]> entry : other.comparisons.entrySet()) {
+            LongSet[] constants = comparisons.get(entry.getKey());
+            if (constants == null) {
+                comparisons.put(entry.getKey(), entry.getValue());
+            } else {
+                for (int i = 0; i < NUM_OPERATORS; i++) {
+                    LongSet otherConstants = entry.getValue()[i];
+                    if (constants[i] == null) {
+                        constants[i] = otherConstants;
+                    } else if (otherConstants != null) {
+                        constants[i].addAll(otherConstants);
+                    }
+                }
+            }
+        }
+        uncomparedUses.addAll(other.uncomparedUses);
+    }
+    
+    /**
+     * Compacts the given values of the given variable to one value per region between the cut points of the
+     * recorded comparisons.
+     * 
+     * @param variable The name of the variable.
+     * @param values The values found by the heuristic, sorted ascending without duplicates.
+     * 
+     * @return The compacted values, sorted ascending; the given values if the variable can not be compacted.
+     */
+    long[] compact(String variable, long[] values) {
+        LongSet[] constants = comparisons.get(variable);
+        long[] result = values;
+        
+        if (constants != null && !uncomparedUses.contains(variable) && values.length > 1) {
+            long[] cuts = getCutPoints(constants);
+            
+            // representatives[i] is the value that replaces values[i]
+            long[] representatives = new long[values.length];
+            long[] compacted = new long[values.length];
+            int size = 0;
+            int cutIndex = 0;
+            for (int i = 0; i < values.length; i++) {
+                // skip all cut points up to the previous value
+                while (cutIndex < cuts.length && i > 0 && cuts[cutIndex] <= values[i - 1]) {
+                    cutIndex++;
+                }
+                boolean newRegion = i == 0 || (cutIndex < cuts.length && cuts[cutIndex] <= values[i]);
+                if (newRegion) {
+                    compacted[size++] = values[i];
+                }
+                representatives[i] = compacted[size - 1];
+            }
+            
+            if (size < values.length) {
+                if (isEquivalent(constants, values, representatives)) {
+                    result = new long[size];
+                    System.arraycopy(compacted, 0, result, 0, size);
+                } else {
+                    LOGGER.logWarning("Compacting the values of " + variable + " would change the outcome of a "
+                            + "comparison; keeping all values");
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Calculates the sorted cut points of the given comparisons. A cut point <code>c</code> means that the values
+     * <code>c - 1</code> and <code>c</code> may have a different outcome for at least one comparison.
+     * 
+     * @param constants The constants of the comparisons, indexed by operator.
+     * 
+     * @return The sorted cut points.
+     */
+    private static long[] getCutPoints(LongSet[] constants) {
+        LongSet cuts = new LongSet();
+        for (int op = 0; op < NUM_OPERATORS; op++) {
+            if (constants[op] != null) {
+                for (long c : constants[op].toSortedArray()) {
+                    if (op == EQ || op == NE || op == LT || op == GE) {
+                        cuts.add(c);
+                    }
+                    if (op == EQ || op == NE || op == LE || op == GT) {
+                        cuts.add(c + 1);
+                    }
+                }
+            }
+        }
+        return cuts.toSortedArray();
+    }
+    
+    /**
+     * Verifies that every value has the same outcome as its representative in all recorded comparisons.
+     * 
+     * @param constants The constants of the comparisons, indexed by operator.
+     * @param values The original values.
+     * @param representatives The representative of each value.
+     * 
+     * @return Whether no comparison distinguishes a value from its representative.
+     */
+    private static boolean isEquivalent(LongSet[] constants, long[] values, long[] representatives) {
+        boolean result = true;
+        for (int op = 0; result && op < NUM_OPERATORS; op++) {
+            if (constants[op] != null) {
+                for (long c : constants[op].toSortedArray()) {
+                    for (int i = 0; result && i < values.length; i++) {
+                        result = evaluate(op, values[i], c) == evaluate(op, representatives[i], c);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Evaluates a comparison.
+     * 
+     * @param operator The index of the operator.
+     * @param value The value of the variable.
+     * @param constant The constant that the variable is compared with.
+     * 
+     * @return The outcome of <code>value operator constant</code>.
+     */
+    private static boolean evaluate(int operator, long value, long constant) {
+        boolean result;
+        switch (operator) {
+        case EQ:
+            result = value == constant;
+            break;
+        case NE:
+            result = value != constant;
+            break;
+        case LE:
+            result = value <= constant;
+            break;
+        case GE:
+            result = value >= constant;
+            break;
+        case LT:
+            result = value < constant;
+            break;
+        default:
+            result = value > constant;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the index of the given operator.
+     * 
+     * @param operator The operator.
+     * 
+     * @return The index of the operator, one of the operator constants of this class.
+     * 
+     * @throws IllegalArgumentException If the operator is not supported.
+     */
+    private static int getOperatorIndex(String operator) throws IllegalArgumentException {
+        int result;
+        switch (operator) {
+        case "==":
+            result = EQ;
+            break;
+        case "!=":
+            result = NE;
+            break;
+        case "<=":
+            result = LE;
+            break;
+        case ">=":
+            result = GE;
+            break;
+        case "<":
+            result = LT;
+            break;
+        case ">":
+            result = GT;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+        return result;
+    }
+    
+}
@@ -18,27 +18,40 @@ package net.ssehub.kernel_haven.non_boolean.heuristic;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.non_boolean.LongSet;
 import net.ssehub.kernel_haven.non_boolean.NonBooleanSettings;
 import net.ssehub.kernel_haven.non_boolean.NonBooleanVariable;
+import net.ssehub.kernel_haven.non_boolean.PreprocessorCondition;
 import net.ssehub.kernel_haven.non_boolean.PreprocessorConditionVisitor;
+import net.ssehub.kernel_haven.non_boolean.SourceTreeIndex;
 import net.ssehub.kernel_haven.util.Logger;
 
 /**
  * A heuristic to find allowed values for integer variables. This walks through all source files in a given source
  * tree.
  * <p>
- * After creating a {@link NonBooleanHeuristic}, use {@link #addAllSourceFiles(File)} and / or
- * {@link #addSingleCppLine(String)} to add C preprocessor lines to consider. After this, call {@link #getResult()}
- * to compute the final result.
+ * After creating a {@link NonBooleanHeuristic}, use {@link #addAllSourceFiles(File)},
+ * {@link #addSourceFiles(Iterable)} and / or {@link #addSingleCppLine(String)} to add C preprocessor lines to
+ * consider. After this, call {@link #getResult()} to compute the final result.
+ * <p>
+ * If {@link #setNumberOfThreads(int)} is greater than 1, the source files are scanned in parallel (see
+ * {@link PreprocessorConditionVisitor#visitFiles(Iterable, int)}). Each thread collects the operations into its own
+ * partial result; the partial results are merged after all files are scanned.
+ * The constants of the resulting {@link NonBooleanVariable}s are sorted, so the result does not depend on the order
+ * in which the files were scanned. Only the constants required by the found operations are stored, in a
+ * {@link LongSet} per variable.
+ * <p>
+ * If {@link #setCompactDomains(boolean)} is enabled, the values of each variable are reduced to one value per group of
+ * values that no comparison can distinguish (see {@link DomainCompactor}).
  * 
  * @author Adam
  */
@@ -46,55 +59,78 @@ public class NonBooleanHeuristic {
 
     private static final Logger LOGGER = Logger.get();
     
-    private static final String GROUP_NAME_VARIABLE = "variable";
-    private static final String GROUP_NAME_OPERATOR = "operator";
-    private static final String GROUP_NAME_VALUE = "value";
-    private static final String SUPPORTED_OPERATORS_REGEX = "==|!=|<|>|<=|>=";
-    private static final String INTEGER_REGEX = "-?[0-9]+[U|u]?[L|l]{0,2}";
+    /**
+     * The supported comparison operators.
+     */
+    private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "<", ">"};
     
     /**
-     * The non boolean operations that were found in the source files. Maps variable name -> NonBooleanOperation.
+     * The operators of {@link #OPERATORS} with swapped operands, i.e. <code>a op b</code> is the same as
+     * <code>b mirror(op) a</code>.
      */
-    private Map<String, Set<NonBooleanOperation>> nonBooleanOperations;
+    private static final String[] MIRRORED_OPERATORS = {"==", "!=", ">=", "<=", ">", "<"};
+    
+    private static final String DEFINED = "defined";
+    
+    private static final int TOKEN_NONE = 0;
+    private static final int TOKEN_IDENTIFIER = 1;
+    private static final int TOKEN_OPERATOR = 2;
+    private static final int TOKEN_INTEGER = 3;
+    private static final int TOKEN_OTHER = 4;
+    
+    /**
+     * The non boolean operations that were found in the source files.
+     */
+    private ScanResult result;
     
     private Pattern variableNamePattern;
-    private Pattern leftSide;
-    private Pattern rightSide;
+    
+    private int numberOfThreads = 1;
+    
+    private boolean compactDomains;
     
     /**
-     * A non boolean operation on a variability variable.
-     * E.g. <code>>= 3</code>.
+     * The result of scanning source files. Each worker of a parallel scan has its own instance.
      */
-    private static final class NonBooleanOperation {
+    private static final class ScanResult {
         
-        private String operator;
+        /**
+         * The constants required by the non boolean operations. Maps variable name -&gt; required constants.
+         */
+        private Map<String, LongSet> requiredConstants;
         
-        private long value;
-
         /**
-         * Sole constructor.
-         * 
-         * @param operator One of {@link NonBooleanHeuristic#SUPPORTED_OPERATORS_REGEX}
-         * @param value A number
+         * Records the comparisons for the domain compaction. <code>null</code> if the domains are not compacted.
          */
-        public NonBooleanOperation(String operator, long value) {
-            this.operator = operator;
-            this.value = value;
-        }
+        private DomainCompactor compactor;
         
-        @Override
-        public int hashCode() {
-            return operator.hashCode() + Long.hashCode(value);
+        /**
+         * Creates an empty result.
+         * 
+         * @param compactDomains Whether the comparisons should be recorded for the domain compaction.
+         */
+        private ScanResult(boolean compactDomains) {
+            this.requiredConstants = new HashMap<>();
+            this.compactor = compactDomains ? new DomainCompactor() : null;
         }
         
-        @Override
-        public boolean equals(Object obj) {
-            boolean equal = false;
-            if (obj instanceof NonBooleanOperation) {
-                NonBooleanOperation other = (NonBooleanOperation) obj;
-                equal = this.operator.equals(other.operator) && this.value == other.value;
+        /**
+         * Merges the given partial result of a worker into this result.
+         * 
+         * @param partialResult The operations found by the worker.
+         */
+        private void merge(ScanResult partialResult) {
+            for (Map.Entry<String, LongSet> entry : partialResult.requiredConstants.entrySet()) {
+                LongSet constants = requiredConstants.get(entry.getKey());
+                if (constants == null) {
+                    requiredConstants.put(entry.getKey(), entry.getValue());
+                } else {
+                    constants.addAll(entry.getValue());
+                }
+            }
+            if (compactor != null) {
+                compactor.merge(partialResult.compactor);
             }
-            return equal;
         }
         
     }
@@ -107,45 +143,36 @@ public class NonBooleanHeuristic {
      * @throws SetUpException If setting up this heuristic fails.
      */
     public NonBooleanHeuristic(Configuration config) throws SetUpException {
-        this.nonBooleanOperations = new HashMap<>();
+        this.result = new ScanResult(false);
         
         this.variableNamePattern = config.getValue(NonBooleanSettings.VARIABLE_REGEX);
-        String variableRegex = variableNamePattern.pattern();
-        
-        try {
-            
-            // <variable> <operator> <value>
-            leftSide = Pattern.compile("^"
-                + createdNamedCaptureGroup(GROUP_NAME_VARIABLE, variableRegex)
-                + "\\s*"
-                + createdNamedCaptureGroup(GROUP_NAME_OPERATOR, SUPPORTED_OPERATORS_REGEX)
-                + "\\s*"
-                + createdNamedCaptureGroup(GROUP_NAME_VALUE, INTEGER_REGEX)
-                + ".*");
-            
-            // <value> <operator> <variable>
-            rightSide = Pattern.compile("^"
-                + createdNamedCaptureGroup(GROUP_NAME_VALUE, INTEGER_REGEX)
-                + "\\s*"
-                + createdNamedCaptureGroup(GROUP_NAME_OPERATOR, SUPPORTED_OPERATORS_REGEX)
-                + "\\s*"
-                + createdNamedCaptureGroup(GROUP_NAME_VARIABLE, variableRegex)
-                + ".*");
-            
-        } catch (PatternSyntaxException e) {
-            throw new SetUpException(e);
+    }
+    
+    /**
+     * Sets the number of threads that scan the source files in {@link #addAllSourceFiles(File)} and
+     * {@link #addSourceFiles(Iterable)}. Default is 1, i.e. the files are scanned sequentially in the calling thread.
+     * 
+     * @param numberOfThreads The number of threads to use; must be at least 1.
+     * 
+     * @throws IllegalArgumentException If numberOfThreads is less than 1.
+     */
+    public void setNumberOfThreads(int numberOfThreads) throws IllegalArgumentException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1, but is " + numberOfThreads);
         }
+        this.numberOfThreads = numberOfThreads;
     }
     
     /**
-     * Creates a named capturing group.
-     * @param groupName The name of the captured group.
-     * @param groupContents The sub RegEx of the group without parenthesis.
+     * Sets whether the values of each variable should be reduced to one value per group of values that no comparison
+     * in the source files can distinguish. Default is <code>false</code>. Must be called before any source files or
+     * lines are added.
      * 
-     * @return A named capturing group, with enclosing parenthesis.
+     * @param compactDomains Whether to compact the domains of the variables.
      */
-    private static String createdNamedCaptureGroup(String groupName, String groupContents) {
-        return "(?<" + groupName + ">" + groupContents + ")";
+    public void setCompactDomains(boolean compactDomains) {
+        this.compactDomains = compactDomains;
+        this.result = new ScanResult(compactDomains);
     }
     
     /**
@@ -157,14 +184,63 @@ public class NonBooleanHeuristic {
      * @throws IOException If reading source file fails.
      */
     public void addAllSourceFiles(File sourceTree) throws IOException {
-        new PreprocessorConditionVisitor() {
+        Queue<ScanResult> partialResults = new ConcurrentLinkedQueue<>();
+        createVisitor(partialResults).visitAllFiles(sourceTree, numberOfThreads);
+        mergeAll(partialResults);
+    }
+    
+    /**
+     * Walks through the given source files and uses the heuristic to find {@link NonBooleanVariable}s. This avoids
+     * walking the source tree again, if the files are already known (see {@link SourceTreeIndex#getSourceFiles()}).
+     * 
+     * @param sourceFiles The source files to consider. Files that are not .c or .h files are ignored.
+     * 
+     * @throws IOException If reading source file fails.
+     */
+    public void addSourceFiles(Iterable<File> sourceFiles) throws IOException {
+        Queue<ScanResult> partialResults = new ConcurrentLinkedQueue<>();
+        createVisitor(partialResults).visitFiles(sourceFiles, numberOfThreads);
+        mergeAll(partialResults);
+    }
+    
+    /**
+     * Creates a visitor that collects the non-boolean operations of all visited files. The visitor may be used with
+     * {@link #numberOfThreads} threads; each thread collects into its own partial result, which is added to the given
+     * queue.
+     * 
+     * @param partialResults The queue to add the partial result of each thread to.
+     * 
+     * @return A visitor that collects into partial results.
+     */
+    private PreprocessorConditionVisitor createVisitor(Queue<ScanResult> partialResults) {
+        ThreadLocal<ScanResult> threadResult = ThreadLocal.withInitial(() -> {
+            ScanResult partialResult = new ScanResult(compactDomains);
+            partialResults.add(partialResult);
+            return partialResult;
+        });
+        
+        return new PreprocessorConditionVisitor() {
             
             @Override
-            public void visit(File file, String line) {
-                collectNonBooleanFromLine(file, line);
+            public void visitConditions(File file, List<PreprocessorCondition> conditions) {
+                ScanResult operations = threadResult.get();
+                for (PreprocessorCondition condition : conditions) {
+                    collectNonBooleanFromLine(file, condition.getText(), operations);
+                }
             }
             
-        }.visitAllFiles(sourceTree);
+        };
+    }
+    
+    /**
+     * Merges the given partial results into {@link #result}, after all files are scanned.
+     * 
+     * @param partialResults The partial results of the threads.
+     */
+    private void mergeAll(Queue<ScanResult> partialResults) {
+        for (ScanResult partialResult : partialResults) {
+            result.merge(partialResult);
+        }
     }
     
     /**
@@ -173,49 +249,317 @@ public class NonBooleanHeuristic {
      * @param line The line to find {@link NonBooleanVariable}s in.
      */
     public void addSingleCppLine(String line) {
-        collectNonBooleanFromLine(null, line);
+        collectNonBooleanFromLine(null, line, result);
     }
     
     /**
-     * Preparation phase: Collects variables and required constants.
+     * Preparation phase: Collects variables and required constants. The line is split into tokens in a single pass
+     * from left to right; every comparison of the form <code>&lt;variable&gt; &lt;operator&gt; &lt;integer&gt;</code>
+     * or <code>&lt;integer&gt; &lt;operator&gt; &lt;variable&gt;</code> is recorded. Identifiers are only considered
+     * to be variables if they match the {@link NonBooleanSettings#VARIABLE_REGEX}.
+     * <p>
+     * If the domains are compacted, all variables that are used in any other way than in such a comparison or as the
+     * argument of <code>defined</code> are reported to the {@link DomainCompactor}.
      * 
      * @param file The file we are currently in (used for error messages).
      * @param line A CPP expression (e.g. if expression).
+     * @param operations The result to collect the found operations into.
      */
-    private void collectNonBooleanFromLine(File file, String line) {
+    private void collectNonBooleanFromLine(File file, String line, ScanResult operations) {
         Matcher variableNameMatcher = variableNamePattern.matcher(line);
         
-        while (variableNameMatcher.find()) {
-            int index = variableNameMatcher.start();
-            String left = line.substring(index);
+        int beforePreviousKind = TOKEN_NONE;
+        int beforePreviousStart = 0;
+        int beforePreviousEnd = 0;
+        int previousKind = TOKEN_NONE;
+        int previousStart = 0;
+        int previousEnd = 0;
+        
+        // for the domain compaction: whether the previous identifier is used in a comparison or in defined()
+        boolean previousCompared = false;
+        int reverseComparedStart = -1;
+        // 0: no defined, 1: after "defined", 2: after "defined("
+        int definedState = 0;
+        
+        int index = skipWhitespace(line, 0);
+        while (index < line.length()) {
+            int end = scanToken(line, index, !isOperand(line, previousKind, previousStart));
+            int kind = getKind(line, index, end);
             
-            // Expression is in form of: <variable> <operator> <constant>
-            boolean handled = identifyNonBooleanOperation(file, left, leftSide); 
-            if (!handled) {
-                handled = identifyNonBooleanOperation(file, left, rightSide); 
+            boolean compared = false;
+            if (kind == TOKEN_IDENTIFIER) {
+                boolean isDefined = end - index == DEFINED.length() && line.startsWith(DEFINED, index);
+                compared = isDefined || definedState != 0 || index == reverseComparedStart;
+                definedState = isDefined ? 1 : 0;
+            } else {
+                definedState = definedState == 1 && line.charAt(index) == '(' ? 2 : 0;
             }
+            
+            if (kind == TOKEN_OPERATOR && (previousKind == TOKEN_IDENTIFIER || previousKind == TOKEN_INTEGER)) {
+                int operator = getOperator(line, index, end);
+                int nextStart = skipWhitespace(line, end);
+                int nextEnd = scanToken(line, nextStart, true);
+                int nextKind = getKind(line, nextStart, nextEnd);
+                
+                // for the domain compaction, the comparison must not be an operand of another operator
+                boolean isolated = true;
+                if (operations.compactor != null) {
+                    int afterNextStart = skipWhitespace(line, nextEnd);
+                    int afterNextEnd = scanToken(line, afterNextStart, false);
+                    isolated = isBoundary(line, beforePreviousKind, beforePreviousStart, beforePreviousEnd, true)
+                        && isBoundary(line, getKind(line, afterNextStart, afterNextEnd), afterNextStart, afterNextEnd,
+                            false);
+                }
+                
+                if (previousKind == TOKEN_IDENTIFIER && nextKind == TOKEN_INTEGER
+                        && isVariable(variableNameMatcher, previousStart, previousEnd)) {
+                    // Expression is in form of: <variable> <operator> <constant>
+                    if (putNonBooleanOperation(operations, file, line.substring(previousStart, previousEnd),
+                            OPERATORS[operator], line.substring(nextStart, nextEnd)) && isolated) {
+                        previousCompared = true;
+                    }
+                    
+                } else if (previousKind == TOKEN_INTEGER && nextKind == TOKEN_IDENTIFIER
+                        && isVariable(variableNameMatcher, nextStart, nextEnd)) {
+                    // Expression is in form of: <constant> <operator> <variable>
+                    if (putNonBooleanOperation(operations, file, line.substring(nextStart, nextEnd),
+                            MIRRORED_OPERATORS[operator], line.substring(previousStart, previousEnd)) && isolated) {
+                        reverseComparedStart = nextStart;
+                    }
+                }
+            }
+            
+            if (operations.compactor != null && previousKind == TOKEN_IDENTIFIER && !previousCompared) {
+                addUncomparedUse(operations.compactor, variableNameMatcher, line, previousStart, previousEnd);
+            }
+            
+            beforePreviousKind = previousKind;
+            beforePreviousStart = previousStart;
+            beforePreviousEnd = previousEnd;
+            previousKind = kind;
+            previousStart = index;
+            previousEnd = end;
+            previousCompared = compared;
+            index = skipWhitespace(line, end);
+        }
+        
+        if (operations.compactor != null && previousKind == TOKEN_IDENTIFIER && !previousCompared) {
+            addUncomparedUse(operations.compactor, variableNameMatcher, line, previousStart, previousEnd);
         }
     }
     
     /**
-     * Identifies {@link NonBooleanOperation}s in preprocessor blocks.
+     * Checks whether the given token separates a comparison from the rest of the expression, i.e. whether it binds
+     * weaker than the comparison operator (or is the start or end of the expression).
      * 
-     * @param file The file we are currently in (used for error messages).
-     * @param expression The expression to expression of the preprocessor block to test
-     * @param variableValuePattern The expression to identify a {@link NonBooleanOperation}, one of {@link #leftSide}
-     *     or {@link #rightSide}
-     *     
-     * @return <tt>true</tt> if the location matches to the given pattern, <tt>false</tt> otherwise.
+     * @param line The line.
+     * @param kind The kind of the token.
+     * @param start The start index of the token.
+     * @param end The end index (exclusive) of the token.
+     * @param left Whether the token is on the left side of the comparison.
+     * 
+     * @return Whether the comparison is not an operand of the given token.
+     */
+    private static boolean isBoundary(String line, int kind, int start, int end, boolean left) {
+        boolean result;
+        if (kind == TOKEN_NONE) {
+            result = true;
+        } else if (kind == TOKEN_OTHER) {
+            result = (left ? "(&|?:,#" : ")&|?:,").indexOf(line.charAt(start)) != -1;
+        } else if (kind == TOKEN_IDENTIFIER && left) {
+            // the directive in #if or #elif
+            result = (end - start == 2 && line.startsWith("if", start))
+                || (end - start == 4 && line.startsWith("elif", start));
+        } else {
+            result = false;
+        }
+        return result;
+    }
+    
+    /**
+     * Reports the given identifier to the {@link DomainCompactor} if it is a variable.
+     * 
+     * @param compactor The compactor to report the identifier to.
+     * @param variableNameMatcher A matcher of the variable regex on the current line.
+     * @param line The line.
+     * @param start The start index of the identifier in the line.
+     * @param end The end index (exclusive) of the identifier in the line.
+     */
+    private static void addUncomparedUse(DomainCompactor compactor, Matcher variableNameMatcher, String line,
+            int start, int end) {
+        
+        if (isVariable(variableNameMatcher, start, end)) {
+            compactor.addUncomparedUse(line.substring(start, end));
+        }
+    }
+    
+    /**
+     * Checks whether the given identifier is a variable, i.e. matches the {@link NonBooleanSettings#VARIABLE_REGEX}.
+     * 
+     * @param variableNameMatcher A matcher of the variable regex on the current line.
+     * @param start The start index of the identifier in the line.
+     * @param end The end index (exclusive) of the identifier in the line.
+     * 
+     * @return Whether the identifier is a variable.
+     */
+    private static boolean isVariable(Matcher variableNameMatcher, int start, int end) {
+        return variableNameMatcher.region(start, end).matches();
+    }
+    
+    /**
+     * Skips whitespace in the given line.
+     * 
+     * @param line The line.
+     * @param index The index to start at.
+     * 
+     * @return The index of the next non-whitespace character, or the length of the line.
+     */
+    private static int skipWhitespace(String line, int index) {
+        int i = index;
+        while (i < line.length() && line.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Finds the end of the token that starts at the given index. Tokens are identifiers, integers (with an optional
+     * minus sign and the suffixes <tt>u</tt> and <tt>l</tt>), runs of the comparison characters <tt>=!&lt;&gt;</tt>,
+     * and single other characters. Same as before, an integer ends at the first character that can't be part of it,
+     * so <tt>0x10</tt> is read as <tt>0</tt> followed by the identifier <tt>x10</tt>.
+     * 
+     * @param line The line.
+     * @param start The start index of the token.
+     * @param negativeAllowed Whether a minus sign followed by a digit starts a (negative) integer, i.e. whether the
+     *      previous token is not an operand of a binary minus.
+     * 
+     * @return The end index (exclusive) of the token; <code>start</code> if there is no token.
+     */
+    private static int scanToken(String line, int start, boolean negativeAllowed) {
+        int length = line.length();
+        int i = start;
+        char c = i < length ? line.charAt(i) : ' ';
+        
+        if (i < length && isIdentifierStart(c)) {
+            i++;
+            while (i < length && (isIdentifierStart(line.charAt(i)) || isDigit(line.charAt(i)))) {
+                i++;
+            }
+            
+        } else if (i < length
+                && (isDigit(c) || (c == '-' && negativeAllowed && i + 1 < length && isDigit(line.charAt(i + 1))))) {
+            i++;
+            while (i < length && isDigit(line.charAt(i))) {
+                i++;
+            }
+            if (i < length && (line.charAt(i) == 'u' || line.charAt(i) == 'U')) {
+                i++;
+            }
+            for (int l = 0; l < 2 && i < length && (line.charAt(i) == 'l' || line.charAt(i) == 'L'); l++) {
+                i++;
+            }
+            
+        } else if (i < length && isComparisonCharacter(c)) {
+            i++;
+            while (i < length && isComparisonCharacter(line.charAt(i))) {
+                i++;
+            }
+            
+        } else if (i < length) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Determines the kind of the given token.
+     * 
+     * @param line The line.
+     * @param start The start index of the token, as passed to {@link #scanToken(String, int, boolean)}.
+     * @param end The end index of the token, as returned by {@link #scanToken(String, int, boolean)}.
+     * 
+     * @return The kind of the token, one of the <code>TOKEN_*</code> constants.
      */
-    private boolean identifyNonBooleanOperation(File file, String expression, Pattern variableValuePattern) {
-        boolean matchFound = false;
-        Matcher m = variableValuePattern.matcher(expression);
-        if (m.matches()) {
-            matchFound = true;
-            putNonBooleanOperation(m.group(GROUP_NAME_VARIABLE), m.group(GROUP_NAME_OPERATOR),
-                parseConstant(file, m.group(GROUP_NAME_VALUE)));
+    private static int getKind(String line, int start, int end) {
+        int result;
+        if (start >= end) {
+            result = TOKEN_NONE;
+        } else if (isIdentifierStart(line.charAt(start))) {
+            result = TOKEN_IDENTIFIER;
+        } else if (isDigit(line.charAt(start)) || (line.charAt(start) == '-' && end - start > 1)) {
+            result = TOKEN_INTEGER;
+        } else if (getOperator(line, start, end) != -1) {
+            result = TOKEN_OPERATOR;
+        } else {
+            result = TOKEN_OTHER;
         }
-        return matchFound;
+        return result;
+    }
+    
+    /**
+     * Checks whether the given token is an operand, i.e. whether a following minus sign is a binary minus.
+     * 
+     * @param line The line.
+     * @param kind The kind of the token.
+     * @param start The start index of the token.
+     * 
+     * @return Whether the token is an identifier, an integer or a closing parenthesis.
+     */
+    private static boolean isOperand(String line, int kind, int start) {
+        return kind == TOKEN_IDENTIFIER || kind == TOKEN_INTEGER || (kind == TOKEN_OTHER && line.charAt(start) == ')');
+    }
+    
+    /**
+     * Finds the comparison operator of the given token.
+     * 
+     * @param line The line.
+     * @param start The start index of the token.
+     * @param end The end index (exclusive) of the token.
+     * 
+     * @return The index of the operator in {@link #OPERATORS}, or -1 if the token is not a comparison operator.
+     */
+    private static int getOperator(String line, int start, int end) {
+        int result = -1;
+        for (int i = 0; i < OPERATORS.length && result == -1; i++) {
+            String operator = OPERATORS[i];
+            if (end - start == operator.length() && line.startsWith(operator, start)) {
+                result = i;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Checks whether the given character can start a C identifier.
+     * 
+     * @param c The character to check.
+     * 
+     * @return Whether the character is an ASCII letter or an underscore.
+     */
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+    
+    /**
+     * Checks whether the given character is an ASCII digit.
+     * 
+     * @param c The character to check.
+     * 
+     * @return Whether the character is a digit.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    /**
+     * Checks whether the given character can be part of a comparison operator.
+     * 
+     * @param c The character to check.
+     * 
+     * @return Whether the character is one of <tt>=!&lt;&gt;</tt>.
+     */
+    private static boolean isComparisonCharacter(char c) {
+        return c == '=' || c == '!' || c == '<' || c == '>';
     }
     
     /**
@@ -226,16 +570,16 @@ public class NonBooleanHeuristic {
      * 
      * @return The parsed constant.
      * 
-     * @throws NumberFormatException If the constant cannot be parsed.
+     * @throws NumberFormatException If the constant cannot be parsed (e.g. if it is too large).
      */
-    private Long parseConstant(File file, String constant) throws NumberFormatException {
+    private static long parseConstant(File file, String constant) throws NumberFormatException {
         while (!constant.isEmpty() && (constant.toLowerCase().endsWith("l") || constant.toLowerCase().endsWith("u"))) {
             constant = constant.substring(0, constant.length() - 1);
         }
         
-        Long result;
+        long result;
         try {
-            result = Long.valueOf(constant);
+            result = Long.parseLong(constant);
         } catch (NumberFormatException exc) {
             if (null != file) {
                 LOGGER.logException("Could not parse \"" + constant + "\" in " + file.getAbsolutePath(), exc);
@@ -249,19 +593,58 @@ public class NonBooleanHeuristic {
     }
     
     /**
-     * Puts a found non-boolean operation in the nonBooleanOperations map.
+     * Puts the constant required by a found non-boolean operation in the given result.
      * 
+     * @param operations The result to put the operation into.
+     * @param file The file we are currently in (used for error messages).
      * @param variable The variable that the operation was found for.
-     * @param operator The operation that was found.
-     * @param value The literal value that the operation was done with.
+     * @param operator The operation that was found, one of {@link #OPERATORS}.
+     * @param constant The literal value that the operation was done with; ignored if it can't be parsed.
+     * 
+     * @return Whether the operation was added, i.e. the constant could be parsed.
      */
-    private void putNonBooleanOperation(String variable, String operator, long value) {
-        Set<NonBooleanOperation> l = nonBooleanOperations.get(variable);
-        if (l == null) {
-            l = new HashSet<>();
-            nonBooleanOperations.put(variable, l);
+    private static boolean putNonBooleanOperation(ScanResult operations, File file,
+            String variable, String operator, String constant) {
+        
+        boolean added = false;
+        try {
+            long value = parseConstant(file, constant);
+            
+            LongSet constants = operations.requiredConstants.get(variable);
+            if (constants == null) {
+                constants = new LongSet();
+                operations.requiredConstants.put(variable, constants);
+            }
+            if (operations.compactor != null) {
+                operations.compactor.addComparison(variable, operator, value);
+            }
+            added = true;
+            
+            switch (operator) {
+            case "==":
+            case "!=":
+            case ">=":
+            case "<=":
+                constants.add(value);
+                break;
+                
+            case ">":
+                constants.add(value + 1);
+                break;
+                
+            case "<":
+                constants.add(value - 1);
+                break;
+                
+            default:
+                LOGGER.logError("Unknown operator: " + operator);
+                break;
+            }
+            
+        } catch (NumberFormatException e) {
+            // already logged by parseConstant(); ignore this operation
         }
-        l.add(new NonBooleanOperation(operator, value));
+        return added;
     }
     
     /**
@@ -273,33 +656,22 @@ public class NonBooleanHeuristic {
         Map<String, NonBooleanVariable> variables = new HashMap<>();
         
         // No variability model available -> use heuristic (use gathered values from code)
-        for (Map.Entry<String, Set<NonBooleanOperation>> entry : nonBooleanOperations.entrySet()) {
-            Set<Long> requiredConstants = new HashSet<>();
-            
-            for (NonBooleanOperation op : entry.getValue()) {
-                switch (op.operator) {
-                case "==":
-                case "!=":
-                case ">=":
-                case "<=":
-                    requiredConstants.add(op.value);
-                    break;
-                    
-                case ">":
-                    requiredConstants.add(op.value + 1);
-                    break;
-                    
-                case "<":
-                    requiredConstants.add(op.value - 1);
-                    break;
-                    
-                default:
-                    LOGGER.logError("Unknown operator: " + op.operator);
-                    break;
-                }
+        int numValues = 0;
+        int numCompactedValues = 0;
+        for (Map.Entry<String, LongSet> entry : result.requiredConstants.entrySet()) {
+            long[] constants = entry.getValue().toSortedArray();
+            numValues += constants.length;
+            if (result.compactor != null) {
+                constants = result.compactor.compact(entry.getKey(), constants);
             }
+            numCompactedValues += constants.length;
             
-            variables.put(entry.getKey(), new NonBooleanVariable(entry.getKey(), requiredConstants));
+            variables.put(entry.getKey(), new NonBooleanVariable(entry.getKey(), constants, false));
+        }
+        
+        if (result.compactor != null) {
+            LOGGER.logInfo("Compacted the domains of " + variables.size() + " variables from " + numValues + " to "
+                    + numCompactedValues + " values");
         }
         
         return variables;
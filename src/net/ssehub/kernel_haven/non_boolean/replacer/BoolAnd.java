@@ -15,44 +15,75 @@
  */
 package net.ssehub.kernel_haven.non_boolean.replacer;
 
+import java.util.List;
+
 import net.ssehub.kernel_haven.util.logic.Conjunction;
 import net.ssehub.kernel_haven.util.logic.Formula;
 
 /**
- * A boolean conjunction of two {@link Result}s.
+ * A boolean conjunction of two or more {@link Result}s.
  *
  * @author Adam
  */
-class BoolAnd extends BoolResult {
-
-    private Result leftSide;
-    
-    private Result rightSide;
+class BoolAnd extends NaryBoolResult {
     
     /**
-     * Creates this conjunction.
+     * Creates this conjunction. If the left side is a conjunction itself, the right side is added to its operands.
      * 
      * @param leftSide The left side.
      * @param rightSide The right side.
      */
     public BoolAnd(Result leftSide, Result rightSide) {
-        this.leftSide = leftSide;
-        this.rightSide = rightSide;
+        super(binaryOperands(BoolAnd.class, leftSide, rightSide));
+    }
+    
+    /**
+     * Creates this conjunction with the given operands.
+     * 
+     * @param operands The operands, at least two. The array is not copied.
+     */
+    private BoolAnd(Result[] operands) {
+        super(operands);
+    }
+    
+    /**
+     * Creates the conjunction of the given results.
+     * 
+     * @param operands The operands.
+     * 
+     * @return {@link LiteralBoolResult#TRUE} if there are no operands, the single operand if there is only one,
+     *      or a conjunction of all operands.
+     */
+    public static Result of(List<Result> operands) {
+        Result result;
+        if (operands.isEmpty()) {
+            result = LiteralBoolResult.TRUE;
+        } else if (operands.size() == 1) {
+            result = operands.get(0);
+        } else {
+            result = new BoolAnd(operands.toArray(new Result[operands.size()]));
+        }
+        return result;
+    }
+    
+    @Override
+    String getOperatorString() {
+        return "&&";
     }
     
     @Override
-    public String toCppString() {
-        return "(" + leftSide.toCppString() + ") && (" + rightSide.toCppString() + ")";
+    LiteralBoolResult getNeutralLiteral() {
+        return LiteralBoolResult.TRUE;
     }
     
     @Override
-    public String toNonCppString() {
-        return "(" + leftSide.toNonCppString() + ") && (" + rightSide.toNonCppString() + ")";
+    NaryBoolResult create(Result[] operands) {
+        return new BoolAnd(operands);
     }
     
     @Override
-    public Formula toFormula() {
-        return new Conjunction(leftSide.toFormula(), rightSide.toFormula());
+    Formula combine(Formula left, Formula right) {
+        return new Conjunction(left, right);
     }
     
 }
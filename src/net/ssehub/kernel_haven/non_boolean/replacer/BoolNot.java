@@ -25,7 +25,7 @@ import net.ssehub.kernel_haven.util.logic.Negation;
  */
 class BoolNot extends BoolResult {
     
-    private Result nested;
+    private final Result nested;
     
     /**
      * Creates this negation.
@@ -37,29 +37,51 @@ class BoolNot extends BoolResult {
     }
     
     @Override
-    public String toCppString() {
-        String result;
-        if (nested == LiteralBoolResult.FALSE) {
-            result = "1"; // not false
-        } else if (nested == LiteralBoolResult.TRUE) {
-            result = "0"; // not true
+    public Result simplify() {
+        Result simplified = nested.simplify();
+        LiteralBoolResult literal = toLiteral(simplified);
+        
+        Result result;
+        if (literal != null) {
+            result = literal == LiteralBoolResult.TRUE ? LiteralBoolResult.FALSE : LiteralBoolResult.TRUE;
+        } else if (simplified instanceof BoolNot) {
+            // double negation
+            result = ((BoolNot) simplified).nested;
+        } else if (simplified == nested) {
+            result = this;
         } else {
-            result = "!(" + nested.toCppString() + ")";
+            result = new BoolNot(simplified);
         }
         return result;
     }
     
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BoolNot && nested.equals(((BoolNot) obj).nested);
+    }
+    
+    @Override
+    public int hashCode() {
+        return ~nested.hashCode();
+    }
+    
+    /**
+     * Returns the nested {@link Result}.
+     * 
+     * @return The negated result.
+     */
+    Result getNested() {
+        return nested;
+    }
+    
+    @Override
+    public String toCppString() {
+        return ResultSerializer.serialize(this, true);
+    }
+    
     @Override
     public String toNonCppString() {
-        String result;
-        if (nested == LiteralBoolResult.FALSE) {
-            result = "1"; // not false
-        } else if (nested == LiteralBoolResult.TRUE) {
-            result = "0"; // not true
-        } else {
-            result = "!(" + nested.toNonCppString() + ")";
-        }
-        return result;
+        return ResultSerializer.serialize(this, false);
     }
     
     @Override
@@ -15,44 +15,75 @@
  */
 package net.ssehub.kernel_haven.non_boolean.replacer;
 
+import java.util.List;
+
 import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.Formula;
 
 /**
- * A boolean disjunction of two {@link Result}s.
+ * A boolean disjunction of two or more {@link Result}s.
  *
  * @author Adam
  */
-class BoolOr extends BoolResult {
-
-    private Result leftSide;
-    
-    private Result rightSide;
+class BoolOr extends NaryBoolResult {
     
     /**
-     * Creates this disjunction.
+     * Creates this disjunction. If the left side is a disjunction itself, the right side is added to its operands.
      * 
      * @param leftSide The left side.
      * @param rightSide The right side.
      */
     public BoolOr(Result leftSide, Result rightSide) {
-        this.leftSide = leftSide;
-        this.rightSide = rightSide;
+        super(binaryOperands(BoolOr.class, leftSide, rightSide));
+    }
+    
+    /**
+     * Creates this disjunction with the given operands.
+     * 
+     * @param operands The operands, at least two. The array is not copied.
+     */
+    private BoolOr(Result[] operands) {
+        super(operands);
+    }
+    
+    /**
+     * Creates the disjunction of the given results.
+     * 
+     * @param operands The operands.
+     * 
+     * @return {@link LiteralBoolResult#FALSE} if there are no operands, the single operand if there is only one,
+     *      or a disjunction of all operands.
+     */
+    public static Result of(List<Result> operands) {
+        Result result;
+        if (operands.isEmpty()) {
+            result = LiteralBoolResult.FALSE;
+        } else if (operands.size() == 1) {
+            result = operands.get(0);
+        } else {
+            result = new BoolOr(operands.toArray(new Result[operands.size()]));
+        }
+        return result;
+    }
+    
+    @Override
+    String getOperatorString() {
+        return "||";
     }
     
     @Override
-    public String toCppString() {
-        return "(" + leftSide.toCppString() + ") || (" + rightSide.toCppString() + ")";
+    LiteralBoolResult getNeutralLiteral() {
+        return LiteralBoolResult.FALSE;
     }
     
     @Override
-    public String toNonCppString() {
-        return "(" + leftSide.toNonCppString() + ") || (" + rightSide.toNonCppString() + ")";
+    NaryBoolResult create(Result[] operands) {
+        return new BoolOr(operands);
     }
     
     @Override
-    public Formula toFormula() {
-        return new Disjunction(leftSide.toFormula(), rightSide.toFormula());
+    Formula combine(Formula left, Formula right) {
+        return new Disjunction(left, right);
     }
     
 }
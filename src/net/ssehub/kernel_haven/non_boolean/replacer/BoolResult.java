@@ -23,6 +23,28 @@ import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
  * @author Adam
  */
 abstract class BoolResult extends Result {
+    
+    /**
+     * Returns the boolean literal that the given result represents, if it is a literal. Integer literals are true if
+     * they are not 0. {@link VariablesWithValues} are literals if their bounds decide whether they are 0 (see
+     * {@link VariablesWithValues#getTruthLiteral()}).
+     * 
+     * @param result The result to check.
+     * 
+     * @return {@link LiteralBoolResult#TRUE} or {@link LiteralBoolResult#FALSE}, or <code>null</code> if the result
+     *      is not a literal.
+     */
+    static LiteralBoolResult toLiteral(Result result) {
+        LiteralBoolResult literal = null;
+        if (result instanceof LiteralBoolResult) {
+            literal = (LiteralBoolResult) result;
+        } else if (result instanceof LiteralIntResult) {
+            literal = ((LiteralIntResult) result).getValue() != 0 ? LiteralBoolResult.TRUE : LiteralBoolResult.FALSE;
+        } else if (result instanceof VariablesWithValues) {
+            literal = ((VariablesWithValues) result).getTruthLiteral();
+        }
+        return literal;
+    }
 
     @Override
     public Result cmpLt(Result other) throws ExpressionFormatException {
@@ -15,9 +15,10 @@
  */
 package net.ssehub.kernel_haven.non_boolean.replacer;
 
-import java.util.function.BiFunction;
+import java.util.function.LongBinaryOperator;
 
 import net.ssehub.kernel_haven.non_boolean.replacer.VariableResult.Type;
+import net.ssehub.kernel_haven.non_boolean.replacer.VariablesWithValues.Comparison;
 import net.ssehub.kernel_haven.util.logic.False;
 import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.logic.True;
@@ -58,17 +59,10 @@ class LiteralIntResult extends Result {
             
         } else if (other instanceof VariablesWithValues) {
             VariablesWithValues o = (VariablesWithValues) other;
-            result = o.apply((value) -> this.value < value);
+            result = o.compareToLiteral(Comparison.LT, value, true);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
-            VariableResult o = (VariableResult) other;
-            if (o.getType() == Type.UNKNOWN) {
-                o.setVar(o.getVar() + "_gt_" + value);
-            }
-            // no change for o.type==INFINITE
-            
-            o.setType(Type.FINAL);
-            result = o;
+            result = ((VariableResult) other).compareWithLiteral("gt", value);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator < or > on Literal and "
@@ -86,17 +80,10 @@ class LiteralIntResult extends Result {
             
         } else if (other instanceof VariablesWithValues) {
             VariablesWithValues o = (VariablesWithValues) other;
-            result = o.apply((value) -> this.value <= value);
+            result = o.compareToLiteral(Comparison.LE, value, true);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
-            VariableResult o = (VariableResult) other;
-            if (o.getType() == Type.UNKNOWN) {
-                o.setVar(o.getVar() + "_ge_" + value);
-            }
-            // no change for o.type==INFINITE
-            
-            o.setType(Type.FINAL);
-            result = o;
+            result = ((VariableResult) other).compareWithLiteral("ge", value);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator <= or >= on Literal and "
@@ -114,17 +101,10 @@ class LiteralIntResult extends Result {
             
         } else if (other instanceof VariablesWithValues) {
             VariablesWithValues o = (VariablesWithValues) other;
-            result = o.apply((value) -> this.value == value);
+            result = o.compareToLiteral(Comparison.EQ, value, true);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
-            VariableResult o = (VariableResult) other;
-            if (o.getType() == Type.UNKNOWN) {
-                o.setVar(o.getVar() + "_eq_" + value);
-            }
-            // no change for o.type==INFINITE
-            
-            o.setType(Type.FINAL);
-            result = o;
+            result = ((VariableResult) other).compareWithLiteral("eq", value);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator == or != on Literal and "
@@ -145,14 +125,14 @@ class LiteralIntResult extends Result {
      * 
      * @throws ExpressionFormatException If other is not a {@link LiteralIntResult} or a {@link VariablesWithValues}.
      */
-    private Result applyOperation(Result other, BiFunction<Long, Long, Long> op, String opcode)
+    private Result applyOperation(Result other, LongBinaryOperator op, String opcode)
             throws ExpressionFormatException {
         
         Result result;
         
         if (other instanceof LiteralIntResult) {
             LiteralIntResult o = (LiteralIntResult) other;
-            this.value = op.apply(this.value, o.value);
+            this.value = op.applyAsLong(this.value, o.value);
             result = this;
             
         } else if (other instanceof VariablesWithValues) {
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean.replacer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.logic.Formula;
+
+/**
+ * A boolean operator ({@link BoolAnd} or {@link BoolOr}) with any number (at least two) of operands. A chain of the
+ * same operator is stored as a single node, instead of a left-deep tree of binary nodes. It is still written as the
+ * left-deep tree, e.g. <code>((A) || (B)) || (C)</code>, see {@link ResultSerializer}.
+ *
+ * @author Adam
+ */
+abstract class NaryBoolResult extends BoolResult {
+    
+    private final Result[] operands;
+    
+    private final int hashCode;
+    
+    /**
+     * Creates this operator.
+     * 
+     * @param operands The operands, at least two. The array is not copied.
+     */
+    protected NaryBoolResult(Result[] operands) {
+        this.operands = operands;
+        
+        int hash = getClass().hashCode();
+        for (Result operand : operands) {
+            hash = 31 * hash + operand.hashCode();
+        }
+        this.hashCode = hash;
+    }
+    
+    /**
+     * Creates the operands for a binary operator. If the left side is the same operator, its operands are reused, so
+     * that left-deep chains are stored as a single node. This copies the operands of the left side, so long chains
+     * should be created at once with {@link BoolAnd#of(List)} or {@link BoolOr#of(List)} instead.
+     * 
+     * @param type The class of the operator.
+     * @param leftSide The left side.
+     * @param rightSide The right side.
+     * 
+     * @return The operands.
+     */
+    protected static Result[] binaryOperands(Class<? extends NaryBoolResult> type, Result leftSide,
+            Result rightSide) {
+        
+        Result[] result;
+        if (leftSide.getClass() == type) {
+            Result[] leftOperands = ((NaryBoolResult) leftSide).operands;
+            result = new Result[leftOperands.length + 1];
+            System.arraycopy(leftOperands, 0, result, 0, leftOperands.length);
+            result[leftOperands.length] = rightSide;
+        } else {
+            result = new Result[] {leftSide, rightSide};
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the operands of this operator. The returned array must not be modified.
+     * 
+     * @return The operands, in order.
+     */
+    Result[] getOperands() {
+        return operands;
+    }
+    
+    /**
+     * Returns the string that is written between two operands, e.g. <code>&amp;&amp;</code>.
+     * 
+     * @return The operator string.
+     */
+    abstract String getOperatorString();
+    
+    /**
+     * Returns the literal that does not change the result of this operator, e.g. true for a conjunction.
+     * 
+     * @return The neutral literal.
+     */
+    abstract LiteralBoolResult getNeutralLiteral();
+    
+    /**
+     * Creates a new operator of the same type with the given operands.
+     * 
+     * @param operands The operands, at least two.
+     * 
+     * @return The new operator.
+     */
+    abstract NaryBoolResult create(Result[] operands);
+    
+    /**
+     * Combines two formulas with this operator.
+     * 
+     * @param left The left formula.
+     * @param right The right formula.
+     * 
+     * @return The combined formula.
+     */
+    abstract Formula combine(Formula left, Formula right);
+    
+    /**
+     * Checks whether any of the operands of the given operator is contained in the given set.
+     * 
+     * @param operator The operator to check the operands of.
+     * @param set The set to check.
+     * 
+     * @return Whether an operand of the operator is in the set.
+     */
+    private static boolean hasOperandIn(NaryBoolResult operator, Set<Result> set) {
+        boolean result = false;
+        for (int i = 0; i < operator.operands.length && !result; i++) {
+            result = set.contains(operator.operands[i]);
+        }
+        return result;
+    }
+    
+    @Override
+    public Result simplify() {
+        LiteralBoolResult neutral = getNeutralLiteral();
+        LiteralBoolResult absorbing = neutral == LiteralBoolResult.TRUE ? LiteralBoolResult.FALSE
+                : LiteralBoolResult.TRUE;
+        
+        // simplify the operands, drop neutral literals and duplicates
+        Set<Result> remaining = new LinkedHashSet<>();
+        boolean changed = false;
+        boolean absorbed = false;
+        for (Result operand : operands) {
+            Result simplified = operand.simplify();
+            changed = changed || simplified != operand;
+            
+            LiteralBoolResult literal = toLiteral(simplified);
+            if (literal == absorbing) {
+                absorbed = true;
+            } else if (literal == null) {
+                remaining.add(simplified);
+            }
+        }
+        
+        Result result;
+        if (absorbed) {
+            result = absorbing;
+            
+        } else {
+            // A || (A || B) = A || B: drop operands that are also an operand of a nested operator of the same type
+            Set<Result> redundant = new HashSet<>();
+            for (Result operand : remaining) {
+                if (operand.getClass() == getClass()) {
+                    for (Result nested : ((NaryBoolResult) operand).operands) {
+                        if (remaining.contains(nested)) {
+                            redundant.add(nested);
+                        }
+                    }
+                }
+            }
+            remaining.removeAll(redundant);
+            
+            // absorption: A || (A && B) = A: drop nested operators of the other type that contain another operand
+            List<Result> kept = new ArrayList<>(remaining.size());
+            for (Result operand : remaining) {
+                if (!(operand instanceof NaryBoolResult && operand.getClass() != getClass()
+                        && hasOperandIn((NaryBoolResult) operand, remaining))) {
+                    kept.add(operand);
+                }
+            }
+            
+            if (kept.isEmpty()) {
+                result = neutral;
+            } else if (kept.size() == 1) {
+                result = kept.get(0);
+            } else if (!changed && kept.size() == operands.length) {
+                result = this;
+            } else {
+                result = create(kept.toArray(new Result[kept.size()]));
+            }
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public String toCppString() {
+        return ResultSerializer.serialize(this, true);
+    }
+    
+    @Override
+    public String toNonCppString() {
+        return ResultSerializer.serialize(this, false);
+    }
+    
+    @Override
+    public Formula toFormula() {
+        Formula result = operands[0].toFormula();
+        for (int i = 1; i < operands.length; i++) {
+            result = combine(result, operands[i].toFormula());
+        }
+        return result;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        boolean result = false;
+        if (obj != null && obj.getClass() == getClass()) {
+            NaryBoolResult other = (NaryBoolResult) obj;
+            result = hashCode == other.hashCode && Arrays.equals(operands, other.operands);
+        }
+        return result;
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+}
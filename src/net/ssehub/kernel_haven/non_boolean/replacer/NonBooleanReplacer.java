@@ -17,13 +17,20 @@ package net.ssehub.kernel_haven.non_boolean.replacer;
 
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import net.ssehub.kernel_haven.cpp_utils.parser.CppParser;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppOperator;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.ICppExressionVisitor;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
@@ -31,6 +38,7 @@ import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
 import net.ssehub.kernel_haven.non_boolean.FiniteIntegerVariable;
 import net.ssehub.kernel_haven.non_boolean.InfiniteIntegerVariable;
+import net.ssehub.kernel_haven.non_boolean.LongSet;
 import net.ssehub.kernel_haven.non_boolean.NonBooleanVariable;
 import net.ssehub.kernel_haven.non_boolean.replacer.VariableResult.Type;
 import net.ssehub.kernel_haven.util.logic.Formula;
@@ -41,20 +49,23 @@ import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 /**
  * A replacer that turns non-boolean expressions (from the C preprocessor (CPP) or another source) into pure-boolean
  * ones. This requires a set of {@link NonBooleanVariable}s (and optionally a map of constants) to work properly.
+ * <p>
+ * A single instance can be used by multiple threads at once: {@link #replaceCpp(String)},
+ * {@link #replaceNonCpp(String)} and {@link #nonCppToFormula(String)} do not modify any shared state. The
+ * configuration is held in an immutable snapshot, which the setters replace as a whole; a replacement that is already
+ * running keeps using the snapshot it started with. Each running replacement uses its own {@link CppParser}.
  *
  * @author Adam
  */
 public class NonBooleanReplacer {
     
-    private Map<String, NonBooleanVariable> variables;
+    private volatile Configuration configuration;
     
-    private Map<String, Long> constants;
-    
-    private CppParser parser;
-    
-    private Set<String> definedLikeFunctions;
-    
-    private Set<String> ignoredFunctions;
+    /**
+     * {@link CppParser}s that are currently not used by any thread. A parser is taken out of this queue for each
+     * parse and put back afterwards, so that concurrent calls never share a parser.
+     */
+    private Queue<CppParser> idleParsers;
     
     /**
      * Creates a new {@link NonBooleanReplacer}.
@@ -63,11 +74,9 @@ public class NonBooleanReplacer {
      * @param constants A {@link Map} of constant values to replace in the expressions.
      */
     public NonBooleanReplacer(Map<String, NonBooleanVariable> variables, Map<String, Long> constants) {
-        this.variables = variables;
-        this.constants = constants;
-        this.parser = new CppParser();
-        this.definedLikeFunctions = new HashSet<>();
-        this.ignoredFunctions = new HashSet<>();
+        this.configuration = new Configuration(copy(variables), copy(constants), Collections.emptySet(),
+                Collections.emptySet());
+        this.idleParsers = new ConcurrentLinkedQueue<>();
     }
     
     /**
@@ -78,55 +87,120 @@ public class NonBooleanReplacer {
      * @param constants A {@link Map} of constant values to replace in the expressions.
      */
     public NonBooleanReplacer(VariabilityModel varModel, Map<String, Long> constants) {
-        this.variables = new HashMap<>();
+        Map<String, NonBooleanVariable> variables = new HashMap<>();
         for (VariabilityVariable variable : varModel.getVariables()) {
             if (variable instanceof FiniteIntegerVariable) {
-                FiniteIntegerVariable intVar = (FiniteIntegerVariable) variable;
-                Set<Long> variableConstants = new HashSet<>();
-                for (int i = 0; i < intVar.getSizeOfRange(); i++) {
-                    variableConstants.add((long) intVar.getValue(i));
-                }
-                variables.put(variable.getName(), new NonBooleanVariable(variable.getName(), variableConstants));
+                variables.put(variable.getName(), createVariable((FiniteIntegerVariable) variable));
                 
             } else if (variable instanceof InfiniteIntegerVariable) {
-                variables.put(variable.getName(), new NonBooleanVariable(variable.getName(), new HashSet<>(), true));
+                variables.put(variable.getName(), new NonBooleanVariable(variable.getName(), new long[0], true));
             }
         }
         
-        this.constants = constants;
-        this.parser = new CppParser();
-        this.definedLikeFunctions = new HashSet<>();
-        this.ignoredFunctions = new HashSet<>();
+        this.configuration = new Configuration(Collections.unmodifiableMap(variables), copy(constants),
+                Collections.emptySet(), Collections.emptySet());
+        this.idleParsers = new ConcurrentLinkedQueue<>();
+    }
+    
+    /**
+     * Creates a {@link NonBooleanVariable} with the values of the given {@link FiniteIntegerVariable}. The values are
+     * collected into a {@link LongSet}, so no {@link Long} objects are created.
+     * 
+     * @param variable The variable from the variability model.
+     * 
+     * @return A {@link NonBooleanVariable} with the same name and the sorted values of the variable.
+     */
+    public static NonBooleanVariable createVariable(FiniteIntegerVariable variable) {
+        LongSet values = new LongSet(variable.getSizeOfRange());
+        for (int i = 0; i < variable.getSizeOfRange(); i++) {
+            values.add(variable.getValue(i));
+        }
+        return new NonBooleanVariable(variable.getName(), values.toSortedArray(), false);
+    }
+    
+    /**
+     * Creates an unmodifiable copy of the given map.
+     * 
+     * @param <V> The type of values in the map.
+     * 
+     * @param map The map to copy.
+     * 
+     * @return An unmodifiable copy of the map.
+     */
+    private static <V> Map<String, V> copy(Map<String, V> map) {
+        return Collections.unmodifiableMap(new HashMap<>(map));
+    }
+    
+    /**
+     * Creates an unmodifiable copy of the given set.
+     * 
+     * @param set The set to copy.
+     * 
+     * @return An unmodifiable copy of the set.
+     */
+    private static Set<String> copy(Set<String> set) {
+        return Collections.unmodifiableSet(new HashSet<>(set));
     }
     
     /**
-     * Overrides the map of constants set in the constructor.
+     * Overrides the map of constants set in the constructor. The map is copied; later modifications of it have no
+     * effect on this replacer.
      * 
      * @param constants The new map of constants to use.
      */
-    public void setConstants(Map<String, Long> constants) {
-        this.constants = constants;
+    public synchronized void setConstants(Map<String, Long> constants) {
+        Configuration old = this.configuration;
+        this.configuration = new Configuration(old.variables, copy(constants), old.definedLikeFunctions,
+                old.ignoredFunctions);
     }
     
     /**
      * Sets which functions should be handled like <code>defined</code> in the C preprocessor. This is basically a set
      * of aliases for <code>defined</code>. <code>defined</code> itself is automatically added, if
-     * {@link #replaceCpp(String)} is used, so it doesn't need to be explicitly added here.
+     * {@link #replaceCpp(String)} is used, so it doesn't need to be explicitly added here. The set is copied; later
+     * modifications of it have no effect on this replacer.
      * 
      * @param definedLikeFunctions The set of <code>defined</code> like function names.
      */
-    public void setDefinedLikeFunctions(Set<String> definedLikeFunctions) {
-        this.definedLikeFunctions = definedLikeFunctions;
+    public synchronized void setDefinedLikeFunctions(Set<String> definedLikeFunctions) {
+        Configuration old = this.configuration;
+        this.configuration = new Configuration(old.variables, old.constants, copy(definedLikeFunctions),
+                old.ignoredFunctions);
     }
     
     /**
      * Sets which functions should be ignored. If such a function is found in the CPP line, then its only argument
-     * is used as the "return value" for this function without any modification.
+     * is used as the "return value" for this function without any modification. The set is copied; later
+     * modifications of it have no effect on this replacer.
      * 
      * @param ignoredFunctions The set of function names to "ignore".
      */
-    public void setIgnoredFunctions(Set<String> ignoredFunctions) {
-        this.ignoredFunctions = ignoredFunctions;
+    public synchronized void setIgnoredFunctions(Set<String> ignoredFunctions) {
+        Configuration old = this.configuration;
+        this.configuration = new Configuration(old.variables, old.constants, old.definedLikeFunctions,
+                copy(ignoredFunctions));
+    }
+    
+    /**
+     * Parses the given expression with a {@link CppParser} that no other thread uses at the same time.
+     * 
+     * @param expression The expression to parse.
+     * 
+     * @return The parsed expression.
+     * 
+     * @throws ExpressionFormatException If parsing the expression fails.
+     */
+    private CppExpression parse(String expression) throws ExpressionFormatException {
+        CppParser parser = idleParsers.poll();
+        if (parser == null) {
+            parser = new CppParser();
+        }
+        
+        try {
+            return parser.parse(expression);
+        } finally {
+            idleParsers.add(parser);
+        }
     }
 
     /**
@@ -180,26 +254,8 @@ public class NonBooleanReplacer {
      * @throws ExpressionFormatException If parsing or evaluating the given expression fails.
      */
     private String replaceImpl(String expr, boolean cpp) throws ExpressionFormatException {
-        CppExpression parsed = parser.parse(expr);
-        
-        boolean removeDefined = false;
-        Result result;
-        try {
-            // add defined to the definedLikeFunctions, if we should parse like the CPP
-            if (cpp && !definedLikeFunctions.contains("defined")) {
-                definedLikeFunctions.add("defined");
-                removeDefined = true;
-            }
-            result = parsed.accept(new AstEvaluator());
-            
-        } finally {
-            // remove defined again, if we only temporarily added it for this call
-            if (removeDefined) {
-                definedLikeFunctions.remove("defined");
-            }
-        }
-        
-        
+        CppExpression parsed = parse(expr);
+        Result result = parsed.accept(new AstEvaluator(configuration, cpp)).simplify();
         
         return cpp ? result.toCppString() : result.toNonCppString();
     }
@@ -214,12 +270,43 @@ public class NonBooleanReplacer {
      * @throws ExpressionFormatException If parsing or evaluating the given expression fails.
      */
     public Formula nonCppToFormula(String expression) throws ExpressionFormatException {
-        CppExpression parsed = parser.parse(expression);
-        Result result = parsed.accept(new AstEvaluator());
+        CppExpression parsed = parse(expression);
+        Result result = parsed.accept(new AstEvaluator(configuration, false)).simplify();
         
         return result.toFormula();
     }
     
+    /**
+     * An immutable snapshot of the configuration of a {@link NonBooleanReplacer}. All collections are unmodifiable.
+     */
+    private static final class Configuration {
+        
+        private final Map<String, NonBooleanVariable> variables;
+        
+        private final Map<String, Long> constants;
+        
+        private final Set<String> definedLikeFunctions;
+        
+        private final Set<String> ignoredFunctions;
+        
+        /**
+         * Creates a configuration. The given collections are not copied.
+         * 
+         * @param variables The known {@link NonBooleanVariable}s.
+         * @param constants The constant values to replace in the expressions.
+         * @param definedLikeFunctions The aliases for <code>defined</code>.
+         * @param ignoredFunctions The functions to ignore.
+         */
+        private Configuration(Map<String, NonBooleanVariable> variables, Map<String, Long> constants,
+                Set<String> definedLikeFunctions, Set<String> ignoredFunctions) {
+            this.variables = variables;
+            this.constants = constants;
+            this.definedLikeFunctions = definedLikeFunctions;
+            this.ignoredFunctions = ignoredFunctions;
+        }
+        
+    }
+    
     /**
      * A visitor that evaluates {@link CppExpression}s based on the given {@link NonBooleanVariable}s and constants.
      * Every integer operation is calculated and resolved. Boolean operators are left as-is (new ones are obviously
@@ -247,6 +334,10 @@ public class NonBooleanReplacer {
      * Pretty much every other combination is not allowed an throws an {@link ExpressionFormatException} (e.g. adding
      * a literal to a boolean value).
      * <p>
+     * Boolean operators on literals are folded while evaluating: the right-hand side of <code>0 &amp;&amp; X</code> and
+     * <code>1 || X</code> is not evaluated at all. Before the result is serialized, {@link Result#simplify()} removes
+     * the remaining literals, double negations, duplicate and absorbed operands.
+     * <p>
      * After this we have a tree of {@link Result}s which contains only boolean operations. On this,
      * {@link Result#toCppString()} is called to turn everything back into a CPP string:
      *  <ul>
@@ -259,17 +350,46 @@ public class NonBooleanReplacer {
      *      VAR is not 0)</li>
      *      <li>{@link BoolResult}s are just written in the obious way</li>
      *  </ul>
+     * <p>
+     * A new evaluator is created for each expression; it only reads the given {@link Configuration}.
      */
-    private class AstEvaluator implements ICppExressionVisitor<Result> {
+    private static class AstEvaluator implements ICppExressionVisitor<Result> {
+        
+        private Configuration config;
+        
+        private boolean cpp;
+        
+        /**
+         * Creates an evaluator.
+         * 
+         * @param config The configuration to evaluate with.
+         * @param cpp Whether the expression is from the CPP, i.e. whether <code>defined</code> should be handled as a
+         *      <code>defined</code> like function.
+         */
+        AstEvaluator(Configuration config, boolean cpp) {
+            this.config = config;
+            this.cpp = cpp;
+        }
+        
+        /**
+         * Checks whether the given function is handled like <code>defined</code>.
+         * 
+         * @param functionName The name of the function.
+         * 
+         * @return Whether the function is <code>defined</code> in a CPP expression, or a configured alias for it.
+         */
+        private boolean isDefinedLike(String functionName) {
+            return (cpp && functionName.equals("defined")) || config.definedLikeFunctions.contains(functionName);
+        }
 
         @Override
         public Result visitFunctionCall(FunctionCall call) throws ExpressionFormatException {
             
             Result result;
-            if (definedLikeFunctions.contains(call.getFunctionName())) {
+            if (isDefinedLike(call.getFunctionName())) {
                 CppExpression argument = call.getArgument();
                 while (argument instanceof FunctionCall
-                        && ignoredFunctions.contains(((FunctionCall) argument).getFunctionName())) {
+                        && config.ignoredFunctions.contains(((FunctionCall) argument).getFunctionName())) {
                     argument = ((FunctionCall) argument).getArgument();
                 }
                 
@@ -285,7 +405,7 @@ public class NonBooleanReplacer {
                             + call.getFunctionName() + "(" + argumentClass + ")");
                 }
                 
-            } else if (ignoredFunctions.contains(call.getFunctionName())) {
+            } else if (config.ignoredFunctions.contains(call.getFunctionName())) {
                 result = call.getArgument().accept(this);
                 
             } else {
@@ -301,12 +421,12 @@ public class NonBooleanReplacer {
         public Result visitVariable(Variable variable) throws ExpressionFormatException {
             Result result;
             
-            Long constantValue = constants.get(variable.getName());
+            Long constantValue = config.constants.get(variable.getName());
             if (constantValue != null) {
                 result = new LiteralIntResult(constantValue);
                 
             } else {
-                NonBooleanVariable var = variables.get(variable.getName());
+                NonBooleanVariable var = config.variables.get(variable.getName());
                 if (var != null) {
                     if (var.isInfinite()) {
                         result = new VariableResult(variable.getName(), Type.INFINITE);
@@ -323,9 +443,85 @@ public class NonBooleanReplacer {
             return result;
         }
 
-        // CHECKSTYLE:OFF // TODO: this method is too long
         @Override
         public Result visitOperator(Operator operator) throws ExpressionFormatException {
+            Result result;
+            if (operator.getOperator() == CppOperator.BOOL_AND || operator.getOperator() == CppOperator.BOOL_OR) {
+                result = visitBoolChain(operator);
+            } else {
+                result = visitNonChainOperator(operator);
+            }
+            return result;
+        }
+        
+        /**
+         * Evaluates a chain of the same boolean operator, e.g. <code>A || B || C</code>. The parser creates a
+         * left-deep tree of binary operators for such a chain; its operands are collected by walking down the left
+         * side of this tree, so that the result is created once with all operands, instead of copying the operands
+         * for each binary operator and recursing once per operand.
+         * <p>
+         * Like in the C preprocessor, the operands are evaluated from left to right and the evaluation stops as soon
+         * as an operand decides the result: <code>0 &amp;&amp; X</code> is always false and <code>1 || X</code> is
+         * always true. Errors in the skipped operands are not reported.
+         * </p>
+         * 
+         * @param operator The {@link CppOperator#BOOL_AND} or {@link CppOperator#BOOL_OR} operator.
+         * 
+         * @return The conjunction or disjunction of the operands.
+         * 
+         * @throws ExpressionFormatException If evaluating an operand fails.
+         */
+        private Result visitBoolChain(Operator operator) throws ExpressionFormatException {
+            CppOperator type = operator.getOperator();
+            boolean isAnd = type == CppOperator.BOOL_AND;
+            LiteralBoolResult absorbing = isAnd ? LiteralBoolResult.FALSE : LiteralBoolResult.TRUE;
+            
+            // the right sides, from right to left
+            List<CppExpression> rightSides = new ArrayList<>();
+            CppExpression leftMost = operator;
+            while (leftMost instanceof Operator && ((Operator) leftMost).getOperator() == type) {
+                rightSides.add(((Operator) leftMost).getRightSide());
+                leftMost = ((Operator) leftMost).getLeftSide();
+            }
+            
+            Result first = leftMost.accept(this);
+            List<Result> operands = new ArrayList<>(rightSides.size() + 1);
+            if (first.getClass() == (isAnd ? BoolAnd.class : BoolOr.class)) {
+                // (A || B) || C = A || B || C
+                operands.addAll(Arrays.asList(((NaryBoolResult) first).getOperands()));
+            } else {
+                operands.add(first);
+            }
+            
+            boolean absorbed = BoolResult.toLiteral(first) == absorbing;
+            for (int i = rightSides.size() - 1; i >= 0 && !absorbed; i--) {
+                Result operand = rightSides.get(i).accept(this);
+                operands.add(operand);
+                absorbed = BoolResult.toLiteral(operand) == absorbing;
+            }
+            
+            Result result;
+            if (absorbed) {
+                result = absorbing;
+            } else if (isAnd) {
+                result = BoolAnd.of(operands);
+            } else {
+                result = BoolOr.of(operands);
+            }
+            return result;
+        }
+        
+        /**
+         * Evaluates an operator that is not handled by {@link #visitBoolChain(Operator)}.
+         * 
+         * @param operator The operator to evaluate.
+         * 
+         * @return The result of the operator.
+         * 
+         * @throws ExpressionFormatException If the operator can't be applied to its operands.
+         */
+        // CHECKSTYLE:OFF // TODO: this method is too long
+        private Result visitNonChainOperator(Operator operator) throws ExpressionFormatException {
         //CHECKSTYLE:ON
             Result leftSide = operator.getLeftSide().accept(this);
             Result rightSide = null;
@@ -336,14 +532,8 @@ public class NonBooleanReplacer {
             Result result = null;
             
             switch (operator.getOperator()) {
-            case BOOL_AND:
-                result = new BoolAnd(leftSide, rightSide);
-                break;
-            case BOOL_OR:
-                result = new BoolOr(leftSide, rightSide);
-                break;
             case BOOL_NOT:
-                result = new BoolNot(leftSide);
+                result = not(leftSide);
                 break;
             
             case INT_ADD:
@@ -428,6 +618,26 @@ public class NonBooleanReplacer {
             return result;
         }
         
+        /**
+         * Creates the negation of the given result. Literals are negated directly.
+         * 
+         * @param nested The result to negate.
+         * 
+         * @return The negation.
+         */
+        private Result not(Result nested) {
+            LiteralBoolResult literal = BoolResult.toLiteral(nested);
+            Result result;
+            if (literal == LiteralBoolResult.TRUE) {
+                result = LiteralBoolResult.FALSE;
+            } else if (literal == LiteralBoolResult.FALSE) {
+                result = LiteralBoolResult.TRUE;
+            } else {
+                result = new BoolNot(nested);
+            }
+            return result;
+        }
+        
         @Override
         public Result visitLiteral(NumberLiteral literal) {
             Result result;
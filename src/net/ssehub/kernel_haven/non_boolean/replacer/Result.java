@@ -191,6 +191,19 @@ abstract class Result {
      */
     public abstract String toNonCppString();
     
+    /**
+     * Simplifies the boolean structure of this result, before it is turned into a string or formula. Literals are
+     * propagated through boolean operators, double negations are removed, and duplicate or absorbed operands of
+     * conjunctions and disjunctions are dropped. The returned result is equivalent to this in a boolean context.
+     * <p>
+     * The default implementation returns this unmodified.
+     * 
+     * @return The simplified result; may be this.
+     */
+    public Result simplify() {
+        return this;
+    }
+    
     @Override
     public String toString() {
         return toNonCppString();
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean.replacer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes {@link Result} trees as C preprocessor or non-CPP expressions. All parts are appended to a single
+ * {@link StringBuilder}, and an explicit stack is used instead of recursion. Thus, the time is linear in the size of
+ * the output, and arbitrarily deep trees do not overflow the call stack.
+ * <p>
+ * {@link NaryBoolResult}s are written as the left-deep tree of binary operators that they replace, e.g.
+ * <code>((A) || (B)) || (C)</code>.
+ *
+ * @author Adam
+ */
+final class ResultSerializer {
+    
+    /**
+     * Don't allow any instances.
+     */
+    private ResultSerializer() {
+    }
+    
+    /**
+     * Writes the given result as a string.
+     * 
+     * @param root The result to write.
+     * @param cpp Whether to write a C preprocessor expression ({@link Result#toCppString()}) or a non-CPP
+     *      expression ({@link Result#toNonCppString()}).
+     * 
+     * @return The string representation of the given result.
+     */
+    static String serialize(Result root, boolean cpp) {
+        StringBuilder result = new StringBuilder();
+        
+        // contains Results that still need to be written and Strings that are appended as-is
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        
+        while (!stack.isEmpty()) {
+            Object element = stack.pop();
+            
+            if (element instanceof String) {
+                result.append((String) element);
+                
+            } else if (element instanceof NaryBoolResult) {
+                // ((o1) op (o2)) op (o3): push in reverse order
+                NaryBoolResult operator = (NaryBoolResult) element;
+                Result[] operands = operator.getOperands();
+                String separator = ") " + operator.getOperatorString() + " (";
+                
+                for (int i = operands.length - 1; i >= 1; i--) {
+                    stack.push(")");
+                    stack.push(operands[i]);
+                    stack.push(separator);
+                }
+                stack.push(operands[0]);
+                for (int i = 1; i < operands.length; i++) {
+                    result.append('(');
+                }
+                
+            } else if (element instanceof BoolNot) {
+                Result nested = ((BoolNot) element).getNested();
+                if (nested == LiteralBoolResult.FALSE) {
+                    result.append('1'); // not false
+                } else if (nested == LiteralBoolResult.TRUE) {
+                    result.append('0'); // not true
+                } else {
+                    result.append("!(");
+                    stack.push(")");
+                    stack.push(nested);
+                }
+                
+            } else if (element instanceof VariablesWithValues) {
+                stack.push(((VariablesWithValues) element).toBoolResult());
+                
+            } else {
+                Result leaf = (Result) element;
+                result.append(cpp ? leaf.toCppString() : leaf.toNonCppString());
+            }
+        }
+        
+        return result.toString();
+    }
+    
+}
@@ -24,6 +24,8 @@ import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
  * A variable with a string name. This can be an unknown variable, in which case {@link #isUnknownVariable()} returns
  * true. An unknown variable can still be the target of comparisons. If this is not unknown, then this variable name
  * is probably in the form of <code>VAR_eq_2</code> (except this was created as a result of a defined() call).
+ * <p>
+ * Instances are immutable; comparisons create new {@link VariableResult}s instead of modifying the operands.
  *
  * @author Adam
  */
@@ -55,9 +57,9 @@ class VariableResult extends Result {
         
     }
     
-    private String var;
+    private final String var;
     
-    private Type type;
+    private final Type type;
     
     /**
      * Creates a new (not unknown) variable result with the given name. No operations can be done on this anymore.
@@ -79,15 +81,6 @@ class VariableResult extends Result {
         return type;
     }
     
-    /**
-     * Overrides the {@link Type} of this variable.
-     * 
-     * @param type The new type of this variable.
-     */
-    public void setType(Type type) {
-        this.type = type;
-    }
-    
     /**
      * Returns the name of this variable.
      * 
@@ -98,12 +91,22 @@ class VariableResult extends Result {
     }
     
     /**
-     * Changes the name of this variable.
+     * Creates the {@link Type#FINAL} result of comparing this (not final) variable with a literal. The name of unknown
+     * variables is extended by the operator and the literal; infinite variables keep their name.
      * 
-     * @param var The new name of this variable.
+     * @param operator The operator for the name, e.g. <code>eq</code>.
+     * @param literal The literal this is compared with.
+     * 
+     * @return A new final variable result.
      */
-    public void setVar(String var) {
-        this.var = var;
+    VariableResult compareWithLiteral(String operator, long literal) {
+        String name = var;
+        if (type == Type.UNKNOWN) {
+            name = var + "_" + operator + "_" + literal;
+        }
+        // no change for type==INFINITE
+        
+        return new VariableResult(name, Type.FINAL);
     }
     
     @Override
@@ -114,26 +117,15 @@ class VariableResult extends Result {
         
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult lit = (LiteralIntResult) other;
-            if (this.type == Type.UNKNOWN) {
-                this.var = var + "_lt_" + lit.getValue();
-            }
-            // no change for type==INFINITE
-            
-            this.type = Type.FINAL;
-            result = this;
+            result = compareWithLiteral("lt", ((LiteralIntResult) other).getValue());
             
         } else if (other instanceof VariableResult && ((VariableResult) other).type != Type.FINAL) {
             VariableResult o = (VariableResult) other;
-            this.var = var + "_lt_" + o.getVar();
-            this.type = Type.FINAL;
-            result = this;
+            result = new VariableResult(var + "_lt_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues && ((VariablesWithValues) other).getNumVars() == 1) {
             VariablesWithValues o = (VariablesWithValues) other;
-            this.var = o.getVarName(0) + "_gt_" + var;
-            this.type = Type.FINAL;
-            result  = this;
+            result = new VariableResult(o.getVarName(0) + "_gt_" + var, Type.FINAL);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator < or > on " + this.type + " VariableResult and "
@@ -150,26 +142,15 @@ class VariableResult extends Result {
         
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult lit = (LiteralIntResult) other;
-            if (this.type == Type.UNKNOWN) {
-                this.var = var + "_le_" + lit.getValue();
-            }
-            // no change for type==INFINITE
-            
-            this.type = Type.FINAL;
-            result = this;
+            result = compareWithLiteral("le", ((LiteralIntResult) other).getValue());
             
         } else if (other instanceof VariableResult && ((VariableResult) other).type != Type.FINAL) {
             VariableResult o = (VariableResult) other;
-            this.var = var + "_le_" + o.getVar();
-            this.type = Type.FINAL;
-            result = this;
+            result = new VariableResult(var + "_le_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues && ((VariablesWithValues) other).getNumVars() == 1) {
             VariablesWithValues o = (VariablesWithValues) other;
-            this.var = o.getVarName(0) +  "_ge_" + var;
-            this.type = Type.FINAL;
-            result = this;
+            result = new VariableResult(o.getVarName(0) + "_ge_" + var, Type.FINAL);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator <= or >= on " + this.type + " VariableResult and "
@@ -186,26 +167,15 @@ class VariableResult extends Result {
         
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult lit = (LiteralIntResult) other;
-            if (this.type == Type.UNKNOWN) {
-                this.var = var + "_eq_" + lit.getValue();
-            }
-            // no change for type==INFINITE
-            
-            this.type = Type.FINAL;
-            result = this;
+            result = compareWithLiteral("eq", ((LiteralIntResult) other).getValue());
             
         } else if (other instanceof VariableResult && ((VariableResult) other).type != Type.FINAL) {
             VariableResult o = (VariableResult) other;
-            this.var = var + "_eq_" + o.getVar();
-            this.type = Type.FINAL;
-            result = this;
+            result = new VariableResult(var + "_eq_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues  && ((VariablesWithValues) other).getNumVars() == 1) {
             VariablesWithValues o = (VariablesWithValues) other;
-            this.var = o.getVarName(0) +  "_eq_" + var;
-            this.type = Type.FINAL;
-            result = this;
+            result = new VariableResult(o.getVarName(0) + "_eq_" + var, Type.FINAL);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator == or != on " + this.type + " VariableResult and "
@@ -302,6 +272,21 @@ class VariableResult extends Result {
         throw new ExpressionFormatException("Can't apply operator ~ on " + this.type + " VariableResult");
     }
     
+    @Override
+    public boolean equals(Object obj) {
+        boolean result = false;
+        if (obj instanceof VariableResult) {
+            VariableResult other = (VariableResult) obj;
+            result = type == other.type && var.equals(other.var);
+        }
+        return result;
+    }
+    
+    @Override
+    public int hashCode() {
+        return var.hashCode() * 31 + type.hashCode();
+    }
+    
     @Override
     public String toCppString() {
         String result;
@@ -16,11 +16,11 @@
 package net.ssehub.kernel_haven.non_boolean.replacer;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 
 import net.ssehub.kernel_haven.non_boolean.NonBooleanVariable;
 import net.ssehub.kernel_haven.non_boolean.replacer.VariableResult.Type;
@@ -37,6 +37,15 @@ import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
  * original values and the current value for this combination. For example, consider NonBooleanVariables A and B with
  * possible values 0 and 1 (each). The addition A + B produces the following pairs of (original value of A, original
  * value of B, current value): (0, 0, 0), (0, 1, 1), (1, 0, 1), (1, 1, 2).
+ * <p>
+ * The combinations are stored column-wise: one primitive array of original values per variable, plus one array of
+ * current values. Operations work on these arrays with primitive functional interfaces, so no values are boxed and no
+ * objects are allocated per combination.
+ * <p>
+ * The minimum and maximum of the current values are updated by every operation. Comparisons first check these bounds:
+ * if they already decide the comparison (e.g. <code>VAR &lt; 100000</code> where all values are smaller), the result
+ * is folded to {@link LiteralBoolResult#TRUE} or {@link LiteralBoolResult#FALSE}. The single combinations are only
+ * enumerated if the bounds do not decide the comparison.
  *
  * @author Adam
  */
@@ -44,61 +53,80 @@ class VariablesWithValues extends Result {
     
     private static final int MAX_ALLOWED_COMINATION_SIZE = 50;
     
+    /**
+     * The comparisons that {@link VariablesWithValues} evaluates. The other comparisons are expressed by switching the
+     * sides.
+     */
+    enum Comparison {
+        
+        /**
+         * <code>left &lt; right</code>.
+         */
+        LT,
+        
+        /**
+         * <code>left &lt;= right</code>.
+         */
+        LE,
+        
+        /**
+         * <code>left == right</code>.
+         */
+        EQ;
+        
+    }
+    
     private String[] varNames;
     
     /**
-     * First dimension: List of arrays of current and original values
-     * <p>
-     * Second dimension: First varNames.length entries are original values, last value is current.
+     * The original values. First dimension: the variable (same index as in {@link #varNames}). Second dimension: the
+     * combination (same index as in {@link #currentValues}). The arrays are never modified, so they may be shared.
      */
-    private long[][] values;
+    private long[][] originalValues;
     
     /**
-     * Creates a variable with the given possible values.
-     * 
-     * @param var The variable name.
-     * @param values The possible values.
+     * The current value of each combination.
      */
-    public VariablesWithValues(String var, long ... values) {
-        this.varNames = new String[] {var};
-        
-        this.values = new long[values.length][2];
-        for (int i = 0; i < values.length; i++) {
-            this.values[i][0] = values[i];
-            this.values[i][1] = values[i];
-        }
-    }
+    private long[] currentValues;
     
     /**
-     * Returns the current value for the given line in values.
-     * 
-     * @param lineIndex The line index of values.
-     * 
-     * @return The current value in the line.
+     * The minimum of {@link #currentValues}; {@link Long#MAX_VALUE} if there are no combinations.
      */
-    private long getCurrentValue(int lineIndex) {
-        long[] line = this.values[lineIndex];
-        return line[line.length - 1];
-    }
+    private long minValue;
     
     /**
-     * Sets the current value for the given line in values.
+     * The maximum of {@link #currentValues}; {@link Long#MIN_VALUE} if there are no combinations.
+     */
+    private long maxValue;
+    
+    /**
+     * Creates a variable with the given possible values.
      * 
-     * @param lineIndex The line index of values.
-     * @param value The new current value in the line.
+     * @param var The variable name.
+     * @param values The possible values. This array is not modified.
      */
-    private void setCurrentValue(int lineIndex, long value) {
-        long[] line = this.values[lineIndex];
-        line[line.length - 1] = value;
+    public VariablesWithValues(String var, long ... values) {
+        this.varNames = new String[] {var};
+        this.originalValues = new long[][] {values};
+        this.currentValues = values.clone();
+        
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        this.minValue = min;
+        this.maxValue = max;
     }
     
     /**
-     * Returns the number of lines (original values plus current value pairs).
+     * Returns the number of combinations (original values plus current value).
      * 
-     * @return The number of lines.
+     * @return The number of combinations.
      */
     private int getNumberOfLines() {
-        return values.length;
+        return currentValues.length;
     }
     
     /**
@@ -122,20 +150,19 @@ class VariablesWithValues extends Result {
     }
     
     /**
-     * Creates a boolean expression for the original values in the given line.
+     * Creates a boolean expression for the original values in the given combination.
      * 
-     * @param line The line with the original values. (a line from this.values).
+     * @param lineIndex The index of the combination.
      * 
      * @return A boolean result expression.
      */
-    private Result buildResultForCombination(long[] line) {
-        Result result =  new VariableResult(getVarName(0) + "_eq_" + line[0], Type.FINAL);
-        
-        for (int i = 1; i < getNumVars(); i++) {
-            result = new BoolAnd(result, new VariableResult(getVarName(i) + "_eq_" + line[i], Type.FINAL));
+    private Result buildResultForCombination(int lineIndex) {
+        List<Result> variables = new ArrayList<>(getNumVars());
+        for (int i = 0; i < getNumVars(); i++) {
+            variables.add(new VariableResult(getVarName(i) + "_eq_" + originalValues[i][lineIndex], Type.FINAL));
         }
         
-        return result;
+        return BoolAnd.of(variables);
     }
     
     /**
@@ -146,35 +173,104 @@ class VariablesWithValues extends Result {
      * 
      * @return The resulting boolean expression that defines which original values satisfy the filter.
      */
-    public Result apply(Function<Long, Boolean> filter) {
-        List<long[]> newValues = new LinkedList<>();
+    public Result apply(LongPredicate filter) {
+        List<Result> combinations = new ArrayList<>();
         for (int i = 0; i < getNumberOfLines(); i++) {
-            if (filter.apply(getCurrentValue(i))) {
-                newValues.add(values[i]);
+            if (filter.test(currentValues[i])) {
+                combinations.add(buildResultForCombination(i));
             }
         }
         
+        return BoolOr.of(combinations);
+    }
+    
+    /**
+     * Compares the current values with the given literal. If the bounds of the current values decide the comparison,
+     * {@link LiteralBoolResult#TRUE} or {@link LiteralBoolResult#FALSE} is returned; otherwise, this is the same as
+     * {@link #apply(LongPredicate)} with the comparison.
+     * 
+     * @param comparison The comparison operator.
+     * @param literal The literal to compare with.
+     * @param literalOnLeft Whether the literal is the left-hand side of the comparison.
+     * 
+     * @return The resulting boolean expression that defines which original values satisfy the comparison.
+     */
+    Result compareToLiteral(Comparison comparison, long literal, boolean literalOnLeft) {
         Result result;
-        if (newValues.isEmpty()) {
-            result = LiteralBoolResult.FALSE;
-            
+        if (literalOnLeft) {
+            result = decideByBounds(comparison, literal, literal, minValue, maxValue);
         } else {
-            Iterator<long[]> it = newValues.iterator();
-            result = buildResultForCombination(it.next());
-            while (it.hasNext()) {
-                result = new BoolOr(result, buildResultForCombination(it.next()));
+            result = decideByBounds(comparison, minValue, maxValue, literal, literal);
+        }
+        
+        if (result == null) {
+            LongPredicate filter;
+            switch (comparison) {
+            case LT:
+                filter = literalOnLeft ? (value) -> literal < value : (value) -> value < literal;
+                break;
+            case LE:
+                filter = literalOnLeft ? (value) -> literal <= value : (value) -> value <= literal;
+                break;
+            default:
+                filter = (value) -> value == literal;
+                break;
             }
+            result = apply(filter);
         }
         
         return result;
     }
+    
+    /**
+     * Decides a comparison only based on the bounds of both sides.
+     * 
+     * @param comparison The comparison operator.
+     * @param leftMin The minimum of the left-hand side.
+     * @param leftMax The maximum of the left-hand side.
+     * @param rightMin The minimum of the right-hand side.
+     * @param rightMax The maximum of the right-hand side.
+     * 
+     * @return {@link LiteralBoolResult#TRUE} if all combinations satisfy the comparison,
+     *      {@link LiteralBoolResult#FALSE} if none does, or <code>null</code> if the bounds do not decide it.
+     */
+    private static Result decideByBounds(Comparison comparison, long leftMin, long leftMax, long rightMin,
+            long rightMax) {
+        
+        boolean alwaysTrue;
+        boolean alwaysFalse;
+        switch (comparison) {
+        case LT:
+            alwaysTrue = leftMax < rightMin;
+            alwaysFalse = leftMin >= rightMax;
+            break;
+        case LE:
+            alwaysTrue = leftMax <= rightMin;
+            alwaysFalse = leftMin > rightMax;
+            break;
+        default:
+            alwaysTrue = leftMin == leftMax && rightMin == rightMax && leftMin == rightMin;
+            alwaysFalse = leftMax < rightMin || leftMin > rightMax;
+            break;
+        }
+        
+        Result result = null;
+        if (leftMin > leftMax || rightMin > rightMax) {
+            // no combinations on one side
+            result = LiteralBoolResult.FALSE;
+        } else if (alwaysTrue) {
+            result = LiteralBoolResult.TRUE;
+        } else if (alwaysFalse) {
+            result = LiteralBoolResult.FALSE;
+        }
+        return result;
+    }
 
     @Override
     public Result cmpLt(Result other) throws ExpressionFormatException {
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult o = (LiteralIntResult) other;
-            result = apply((value) -> value < o.getValue());
+            result = compareToLiteral(Comparison.LT, ((LiteralIntResult) other).getValue(), false);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
             if (getNumVars() > 1) {
@@ -182,12 +278,10 @@ class VariablesWithValues extends Result {
                         "Can't compare unknown variable with multiple VariablesWithResults");
             }
             VariableResult o = (VariableResult) other;
-            o.setVar(varNames[0] + "_lt_" + o.getVar());
-            o.setType(Type.FINAL);
-            result = o;
+            result = new VariableResult(varNames[0] + "_lt_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues) {
-            result = join(this, (VariablesWithValues) other, (v1, v2) -> v1 < v2);
+            result = join(this, (VariablesWithValues) other, Comparison.LT);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator < or > on VariablesWithValues and "
@@ -200,8 +294,7 @@ class VariablesWithValues extends Result {
     public Result cmpLe(Result other) throws ExpressionFormatException {
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult o = (LiteralIntResult) other;
-            result = apply((value) -> value <= o.getValue());
+            result = compareToLiteral(Comparison.LE, ((LiteralIntResult) other).getValue(), false);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
             if (getNumVars() > 1) {
@@ -209,12 +302,10 @@ class VariablesWithValues extends Result {
                         "Can't compare unknown variable with multiple VariablesWithResults");
             }
             VariableResult o = (VariableResult) other;
-            o.setVar(varNames[0] + "_le_" + o.getVar());
-            o.setType(Type.FINAL);
-            result = o;
+            result = new VariableResult(varNames[0] + "_le_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues) {
-            result = join(this, (VariablesWithValues) other, (v1, v2) -> v1 <= v2);
+            result = join(this, (VariablesWithValues) other, Comparison.LE);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator <= or >= on VariablesWithValues and "
@@ -227,8 +318,7 @@ class VariablesWithValues extends Result {
     public Result cmpEq(Result other) throws ExpressionFormatException {
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult o = (LiteralIntResult) other;
-            result = apply((value) -> value == o.getValue());
+            result = compareToLiteral(Comparison.EQ, ((LiteralIntResult) other).getValue(), false);
             
         } else if (other instanceof VariableResult && ((VariableResult) other).getType() != Type.FINAL) {
             if (getNumVars() > 1) {
@@ -236,12 +326,10 @@ class VariablesWithValues extends Result {
                         "Can't compare unknown variable with multiple VariablesWithResults");
             }
             VariableResult o = (VariableResult) other;
-            o.setVar(varNames[0] + "_eq_" + o.getVar());
-            o.setType(Type.FINAL);
-            result = o;
+            result = new VariableResult(varNames[0] + "_eq_" + o.getVar(), Type.FINAL);
             
         } else if (other instanceof VariablesWithValues) {
-            result = join(this, (VariablesWithValues) other, (v1, v2) -> v1 == v2);
+            result = join(this, (VariablesWithValues) other, Comparison.EQ);
             
         } else {
             throw new ExpressionFormatException("Can't apply operator == or != on VariablesWithValues and "
@@ -253,7 +341,34 @@ class VariablesWithValues extends Result {
     /**
      * Creates a {@link BoolResult} tree with {@link VariableResult}s for a comparison with the given two
      * {@link VariableWithValues}s. This boolean expression will list all the possible combinations of original values
-     * that satisfy the given comparison with their current values.
+     * that satisfy the given comparison with their current values. If the bounds of both sides decide the comparison,
+     * {@link LiteralBoolResult#TRUE} or {@link LiteralBoolResult#FALSE} is returned instead.
+     * <p>
+     * Both sides are sorted by their current values, and then merged: for each distinct current value of the
+     * left-hand side, the matching combinations of the right-hand side are a contiguous range in the sorted order
+     * (a run of equal values for {@link Comparison#EQ}, a suffix for {@link Comparison#LT} and
+     * {@link Comparison#LE}). Since the values are visited in ascending order, the bounds of this range only move
+     * forward. Each group becomes one <code>(left1 || left2 ...) &amp;&amp; (right1 || right2 ...)</code> part, so
+     * the work and the size of the result are proportional to the number of distinct left values and matching right
+     * combinations, instead of the product of all pairs.
+     * 
+     * @param var1 The left-hand side of the comparison.
+     * @param var2 The right-hand side of the comparison.
+     * @param comparison The comparison operator.
+     * 
+     * @return A boolean expression that fulfills the given comparison.
+     */
+    private static Result join(VariablesWithValues var1, VariablesWithValues var2, Comparison comparison) {
+        Result result = decideByBounds(comparison, var1.minValue, var1.maxValue, var2.minValue, var2.maxValue);
+        if (result == null) {
+            result = mergeJoin(var1, var2, comparison);
+        }
+        return result;
+    }
+    
+    /**
+     * Implements {@link #join(VariablesWithValues, VariablesWithValues, Comparison)} if the bounds of both sides do
+     * not decide the comparison.
      * 
      * @param var1 The left-hand side of the comparison.
      * @param var2 The right-hand side of the comparison.
@@ -261,47 +376,149 @@ class VariablesWithValues extends Result {
      * 
      * @return A boolean expression that fulfills the given comparison.
      */
-    private static Result join(VariablesWithValues var1, VariablesWithValues var2,
-            BiFunction<Long, Long, Boolean> comparison) {
+    private static Result mergeJoin(VariablesWithValues var1, VariablesWithValues var2, Comparison comparison) {
+        long[] current1 = var1.currentValues;
+        long[] current2 = var2.currentValues;
+        int[] sorted1 = sortedIndices(current1);
+        int[] sorted2 = sortedIndices(current2);
         
-        List<BoolAnd> parts = new ArrayList<>(var1.getNumberOfLines() * var2.getNumberOfLines());
+        List<Result> parts = new ArrayList<>();
+        int lowerBound = 0; // first position in sorted2 with a value >= the current left value
+        int upperBound = 0; // first position in sorted2 with a value > the current left value
         
-        for (int values1Index = 0; values1Index < var1.getNumberOfLines(); values1Index++) {
-            for (int values2Index = 0; values2Index < var2.getNumberOfLines(); values2Index++) {
-                
-                if (comparison.apply(var1.getCurrentValue(values1Index), var2.getCurrentValue(values2Index))) {
-                    parts.add(new BoolAnd(
-                            var1.buildResultForCombination(var1.values[values1Index]),
-                            var2.buildResultForCombination(var2.values[values2Index])));
-                }
-                
+        int groupStart = 0;
+        while (groupStart < sorted1.length) {
+            long value = current1[sorted1[groupStart]];
+            int groupEnd = groupStart + 1;
+            while (groupEnd < sorted1.length && current1[sorted1[groupEnd]] == value) {
+                groupEnd++;
+            }
+            
+            while (lowerBound < sorted2.length && current2[sorted2[lowerBound]] < value) {
+                lowerBound++;
+            }
+            upperBound = Math.max(upperBound, lowerBound);
+            while (upperBound < sorted2.length && current2[sorted2[upperBound]] == value) {
+                upperBound++;
             }
+            
+            int matchStart;
+            int matchEnd;
+            switch (comparison) {
+            case LT:
+                matchStart = upperBound;
+                matchEnd = sorted2.length;
+                break;
+            case LE:
+                matchStart = lowerBound;
+                matchEnd = sorted2.length;
+                break;
+            default:
+                matchStart = lowerBound;
+                matchEnd = upperBound;
+                break;
+            }
+            
+            if (matchStart < matchEnd) {
+                parts.add(new BoolAnd(
+                        var1.buildResultForCombinations(sorted1, groupStart, groupEnd),
+                        var2.buildResultForCombinations(sorted2, matchStart, matchEnd)));
+            }
+            
+            groupStart = groupEnd;
         }
         
-        Result result;
-        if (parts.isEmpty()) {
-            result = LiteralBoolResult.FALSE;
-        } else {
-            result = parts.get(0);
-            for (int i = 1; i < parts.size(); i++) {
-                result = new BoolOr(result, parts.get(i));
+        return BoolOr.of(parts);
+    }
+    
+    /**
+     * Creates a disjunction of the boolean expressions for the given combinations.
+     * 
+     * @param indices The indices of combinations.
+     * @param from The first position in indices to use.
+     * @param to The position after the last position in indices to use. Must be greater than from.
+     * 
+     * @return A boolean expression that is true if any of the given combinations is selected.
+     */
+    private Result buildResultForCombinations(int[] indices, int from, int to) {
+        List<Result> combinations = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            combinations.add(buildResultForCombination(indices[i]));
+        }
+        return BoolOr.of(combinations);
+    }
+    
+    /**
+     * Sorts the indices of the given values by the values. Indices of equal values stay in ascending order.
+     * 
+     * @param values The values to sort by.
+     * 
+     * @return The indices of the values, sorted by the values.
+     */
+    static int[] sortedIndices(long[] values) {
+        int[] result = new int[values.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        
+        // bottom-up merge sort, which is stable and needs no boxing
+        int[] buffer = new int[values.length];
+        for (int width = 1; width < result.length; width *= 2) {
+            for (int start = 0; start < result.length; start += 2 * width) {
+                int middle = Math.min(start + width, result.length);
+                int end = Math.min(start + 2 * width, result.length);
+                
+                int left = start;
+                int right = middle;
+                for (int k = start; k < end; k++) {
+                    // take from the left run on ties, to keep equal values in ascending index order
+                    if (right >= end || (left < middle && values[result[left]] <= values[result[right]])) {
+                        buffer[k] = result[left++];
+                    } else {
+                        buffer[k] = result[right++];
+                    }
+                }
             }
+            
+            int[] tmp = result;
+            result = buffer;
+            buffer = tmp;
         }
         
         return result;
     }
     
-    @Override
-    public Result subUnary() throws ExpressionFormatException {
-        for (int i = 0; i < getNumberOfLines(); i++) {
-            setCurrentValue(i, -getCurrentValue(i));
+    /**
+     * Applies the given unary operation on all current values.
+     * 
+     * @param op The operation to perform on all current values.
+     * 
+     * @return this, with the operation applied to all current values.
+     */
+    private Result applyUnaryOperation(LongUnaryOperator op) {
+        long[] current = this.currentValues;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < current.length; i++) {
+            long value = op.applyAsLong(current[i]);
+            current[i] = value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
         }
+        this.minValue = min;
+        this.maxValue = max;
         return this;
     }
     
+    @Override
+    public Result subUnary() throws ExpressionFormatException {
+        return applyUnaryOperation((value) -> -value);
+    }
+    
     /**
      * Applies the given integer arithmetic operation on all current values. Other is the right-hand side of the
-     * operation; it must be an {@link LiteralIntResult}.
+     * operation; it must be an {@link LiteralIntResult} or another {@link VariablesWithValues}. In the latter case,
+     * this becomes the cross-product of both.
      * 
      * @param other The right-hand side of the operation.
      * @param op The operation to perform on all current values.
@@ -310,62 +527,38 @@ class VariablesWithValues extends Result {
      * 
      * @return this, with the operation applied to all current values.
      * 
-     * @throws ExpressionFormatException If other is not a {@link LiteralIntResult}.
+     * @throws ExpressionFormatException If other is not a {@link LiteralIntResult} or {@link VariablesWithValues}.
      */
-    public Result applyOperation(Result other, BiFunction<Long, Long, Long> op, String opcode, boolean switchSides) 
+    public Result applyOperation(Result other, LongBinaryOperator op, String opcode, boolean switchSides) 
             throws ExpressionFormatException {
         
         Result result;
         if (other instanceof LiteralIntResult) {
-            LiteralIntResult o = (LiteralIntResult) other;
-            for (int i = 0; i < getNumberOfLines(); i++) {
-                if (switchSides) {
-                    setCurrentValue(i, op.apply(o.getValue(), getCurrentValue(i)));
-                } else {
-                    setCurrentValue(i, op.apply(getCurrentValue(i), o.getValue()));
+            long literal = ((LiteralIntResult) other).getValue();
+            long[] current = this.currentValues;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            if (switchSides) {
+                for (int i = 0; i < current.length; i++) {
+                    long value = op.applyAsLong(literal, current[i]);
+                    current[i] = value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            } else {
+                for (int i = 0; i < current.length; i++) {
+                    long value = op.applyAsLong(current[i], literal);
+                    current[i] = value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
                 }
             }
+            this.minValue = min;
+            this.maxValue = max;
             result = this;
             
         } else if (other instanceof VariablesWithValues) {
-            VariablesWithValues o = (VariablesWithValues) other;
-            
-            int resultSize = this.values.length * o.values.length;
-            if (resultSize > MAX_ALLOWED_COMINATION_SIZE) {
-                throw new ExpressionFormatException("Can't do integer opertion on two VariablesWithValues with sizes "
-                        + this.values.length + " and " + o.values.length + " (result size would be "
-                        + resultSize + ")\n" + "Left side has " + this.getNumVars() + ", right side has "
-                        + o.getNumVars() + " variables");
-            }
-            
-            String[] varNames = new String[this.getNumVars() + o.getNumVars()];
-            // varNames = {this.varNames, o.VarNames}
-            System.arraycopy(this.varNames, 0, varNames, 0, this.varNames.length);
-            System.arraycopy(o.varNames, 0, varNames, this.varNames.length, o.varNames.length);
-
-            long[][] values = new long[resultSize][this.getNumVars() + o.getNumVars() + 1];
-            int valuesIndex = 0;
-            for (int thisIndex = 0; thisIndex < getNumberOfLines(); thisIndex++) {
-                for (int oIndex = 0; oIndex < o.getNumberOfLines(); oIndex++) {
-                    long[] line = values[valuesIndex];
-                    valuesIndex++;
-                    
-                    long[] thisLine = this.values[thisIndex];
-                    long[] oLine = o.values[oIndex];
-                    
-                    // line = {thisLine (except last), oLine (except last), combineCurrentValue}
-                    System.arraycopy(thisLine, 0, line, 0, thisLine.length - 1);
-                    System.arraycopy(oLine, 0, line, thisLine.length - 1, oLine.length - 1);
-                    if (switchSides) {
-                        line[line.length - 1] = op.apply(o.getCurrentValue(oIndex), this.getCurrentValue(thisIndex)); 
-                    } else {
-                        line[line.length - 1] = op.apply(this.getCurrentValue(thisIndex), o.getCurrentValue(oIndex)); 
-                    }
-                }
-            }
-            
-            this.varNames = varNames;
-            this.values = values;
+            crossProduct((VariablesWithValues) other, op, opcode, switchSides);
             result = this;
             
         } else {
@@ -375,6 +568,83 @@ class VariablesWithValues extends Result {
         return result;
     }
     
+    /**
+     * Replaces the combinations of this with the cross-product of the combinations of this and other. The current
+     * value of each new combination is calculated with the given operation.
+     * 
+     * @param other The right-hand side of the operation.
+     * @param op The operation to combine the current values with.
+     * @param opcode A string representation of the operation. Used in error messages.
+     * @param switchSides Whether left- and right-hand side should be reversed.
+     * 
+     * @throws ExpressionFormatException If the cross-product has more than {@link #MAX_ALLOWED_COMINATION_SIZE}
+     *      combinations.
+     */
+    private void crossProduct(VariablesWithValues other, LongBinaryOperator op, String opcode, boolean switchSides)
+            throws ExpressionFormatException {
+        
+        int thisLines = this.getNumberOfLines();
+        int otherLines = other.getNumberOfLines();
+        int resultSize = thisLines * otherLines;
+        if (resultSize > MAX_ALLOWED_COMINATION_SIZE) {
+            throw new ExpressionFormatException("Can't do integer opertion on two VariablesWithValues with sizes "
+                    + thisLines + " and " + otherLines + " (result size would be "
+                    + resultSize + ")\n" + "Left side has " + this.getNumVars() + ", right side has "
+                    + other.getNumVars() + " variables");
+        }
+        
+        // the combination (thisIndex, otherIndex) is stored at thisIndex * otherLines + otherIndex
+        String[] varNames = new String[this.getNumVars() + other.getNumVars()];
+        long[][] originalValues = new long[varNames.length][];
+        
+        for (int var = 0; var < this.getNumVars(); var++) {
+            varNames[var] = this.varNames[var];
+            long[] column = new long[resultSize];
+            long[] thisColumn = this.originalValues[var];
+            for (int thisIndex = 0; thisIndex < thisLines; thisIndex++) {
+                Arrays.fill(column, thisIndex * otherLines, (thisIndex + 1) * otherLines, thisColumn[thisIndex]);
+            }
+            originalValues[var] = column;
+        }
+        
+        for (int var = 0; var < other.getNumVars(); var++) {
+            varNames[this.getNumVars() + var] = other.varNames[var];
+            long[] column = new long[resultSize];
+            long[] otherColumn = other.originalValues[var];
+            for (int thisIndex = 0; thisIndex < thisLines; thisIndex++) {
+                System.arraycopy(otherColumn, 0, column, thisIndex * otherLines, otherLines);
+            }
+            originalValues[this.getNumVars() + var] = column;
+        }
+        
+        long[] currentValues = new long[resultSize];
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int index = 0;
+        for (int thisIndex = 0; thisIndex < thisLines; thisIndex++) {
+            long thisValue = this.currentValues[thisIndex];
+            for (int otherIndex = 0; otherIndex < otherLines; otherIndex++) {
+                long otherValue = other.currentValues[otherIndex];
+                long value;
+                if (switchSides) {
+                    value = op.applyAsLong(otherValue, thisValue);
+                } else {
+                    value = op.applyAsLong(thisValue, otherValue);
+                }
+                currentValues[index] = value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                index++;
+            }
+        }
+        
+        this.varNames = varNames;
+        this.originalValues = originalValues;
+        this.currentValues = currentValues;
+        this.minValue = min;
+        this.maxValue = max;
+    }
+    
     @Override
     public Result add(Result other) throws ExpressionFormatException {
         return applyOperation(other, (aa, bb) -> aa + bb, "+", false);
@@ -417,25 +687,55 @@ class VariablesWithValues extends Result {
     
     @Override
     public Result binInv() throws ExpressionFormatException {
-        for (int i = 0; i < getNumberOfLines(); i++) {
-            setCurrentValue(i, ~getCurrentValue(i));
-        }
-        return this;
+        return applyUnaryOperation((value) -> ~value);
     }
 
     @Override
     public String toCppString() {
-        return new BoolNot(apply((currentValue) -> currentValue == 0)).toCppString();
+        return ResultSerializer.serialize(this, true);
     }
     
     @Override
     public String toNonCppString() {
-        return new BoolNot(apply((currentValue) -> currentValue == 0)).toNonCppString();
+        return ResultSerializer.serialize(this, false);
     }
     
     @Override
     public Formula toFormula() {
-        return new BoolNot(apply((currentValue) -> currentValue == 0)).toFormula();
+        return toBoolResult().toFormula();
+    }
+    
+    /**
+     * Converts this into a boolean expression: true for all combinations where the current value is not 0.
+     * 
+     * @return The boolean expression for this.
+     */
+    Result toBoolResult() {
+        return new BoolNot(compareToLiteral(Comparison.EQ, 0, false));
+    }
+    
+    /**
+     * Returns the boolean literal of {@link #toBoolResult()}, if the bounds of the current values decide it. E.g. if
+     * no current value can be 0, this is always true.
+     * 
+     * @return {@link LiteralBoolResult#TRUE} or {@link LiteralBoolResult#FALSE}, or <code>null</code> if the result
+     *      depends on the combination of values.
+     */
+    LiteralBoolResult getTruthLiteral() {
+        Result isZero = decideByBounds(Comparison.EQ, minValue, maxValue, 0, 0);
+        
+        LiteralBoolResult result = null;
+        if (isZero == LiteralBoolResult.FALSE) {
+            result = LiteralBoolResult.TRUE;
+        } else if (isZero == LiteralBoolResult.TRUE) {
+            result = LiteralBoolResult.FALSE;
+        }
+        return result;
+    }
+    
+    @Override
+    public Result simplify() {
+        return toBoolResult().simplify();
     }
 
 }
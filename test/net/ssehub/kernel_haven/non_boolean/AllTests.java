@@ -34,6 +34,14 @@ import net.ssehub.kernel_haven.non_boolean.replacer.AllReplacerTests;
     NonBooleanPreperationScenarioTest.class,
     CppBufferedWriterTest.class,
     NonBooleanPreparationTest.class,
+    FileManifestTest.class,
+    SourceTreeIndexTest.class,
+    ReplacementCacheTest.class,
+    SourceFileRewriterTest.class,
+    CppDirectiveTest.class,
+    LongSetTest.class,
+    HeuristicResultCacheTest.class,
+    PreprocessorConditionVisitorTest.class,
     })
 public class AllTests {
 
@@ -16,6 +16,10 @@
 package net.ssehub.kernel_haven.non_boolean;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -33,8 +37,9 @@ public class CPPUtilsTest {
     @Test
     public void testIsIfOrElifStatement() {
         String[] validIfs = {"#if (Var > Something)", "#if(Var > Something)", "#elif (Var > Something)",
-            "#elif(Var > Something)", "#if (Var > Something) \\"};
-        String[] inValidIfs = {"#ifdef Var", "#ifndef Var", "#ifdef(Var)", "#ifndef(Var)", ""};
+            "#elif(Var > Something)", "#if (Var > Something) \\", "# if Var", "  #elif Var", "#\tif Var"};
+        String[] inValidIfs = {"#ifdef Var", "#ifndef Var", "#ifdef(Var)", "#ifndef(Var)", "", "# ifdef Var",
+            "#IF Var", "#iffy", "if Var"};
         
         // Check desired statements
         for (String validIf : validIfs) {
@@ -47,5 +52,59 @@ public class CPPUtilsTest {
                 CPPUtils.isIfOrElifStatement(invalidIf));
         }
     }
+    
+    /**
+     * Tests the {@link CPPUtils#canPassThrough(java.io.InputStream)} method.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCanPassThrough() throws IOException {
+        String[] passThrough = {"", "int a;\n", "#ifdef A\n#else\n#endif\n", "  #ifndef A\n#endif\n",
+            "#define IF_A 1\n", "// #if A\n", "#include <if.h>\n", "# ifdef A\n#\n",
+            // the C preprocessor is case-sensitive; the same as CppDirective
+            "#ERROR no\n", "#IF A\n", "#iffy\n", "#errors\n", "#elifant\n"};
+        String[] rewrite = {"#if A\n", "  #if(A)\n", "#elif A\n", "#error no\n", "#if", 
+            "int a;", "int a;\r\n", "#ifdef A\n#endif\n #elif B\n", "# if A\n", "#\t error\n",
+            "int a;\n#if A\n", "int a; /* a comment */\n#error"};
+        
+        for (String content : passThrough) {
+            Assert.assertTrue(content + " should be passed through", canPassThrough(content));
+        }
+        for (String content : rewrite) {
+            Assert.assertFalse(content + " should be rewritten", canPassThrough(content));
+        }
+    }
+    
+    /**
+     * Tests the {@link CPPUtils#canPassThrough(java.io.InputStream)} method with lines longer than its buffer.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCanPassThroughLongLines() throws IOException {
+        StringBuilder builder = new StringBuilder("//");
+        for (int i = 0; i < 20000; i++) {
+            builder.append('x');
+        }
+        String longLine = builder.append('\n').toString();
+        
+        Assert.assertTrue(canPassThrough(longLine + "int a;\n" + longLine));
+        Assert.assertFalse(canPassThrough(longLine + "#if A\n" + longLine));
+        Assert.assertFalse(canPassThrough(longLine + longLine + "#elif A\n"));
+        Assert.assertFalse(canPassThrough(longLine + longLine + "int a;"));
+    }
+    
+    /**
+     * Calls {@link CPPUtils#canPassThrough(java.io.InputStream)} on the given file contents.
+     * 
+     * @param content The contents of the file.
+     * @return The result of {@link CPPUtils#canPassThrough(java.io.InputStream)}.
+     * 
+     * @throws IOException unwanted.
+     */
+    private static boolean canPassThrough(String content) throws IOException {
+        return CPPUtils.canPassThrough(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
 
 }
@@ -90,6 +90,18 @@ public class CppBufferedWriterTest {
                 "//before\n" + CppBufferedWriter.REPLACEMENT + "\n#if (!(A && B) && C)\n"
                     + "//code to keep\n#endif\n//after\n",
                 "Partial removal - 4"},
+            {"#if A\n//a\n#elif B\n" + error + "#else\n//c\n#endif\n",
+                "#if A\n//a\n" + CppBufferedWriter.REPLACEMENT + "\n#elif !(B)\n//c\n#endif\n",
+                "Partial removal - 5"},
+            {"#if OUTER\n#if A\n//a\n#endif\n#if B\n" + error + "#endif\n//after\n#endif\n",
+                "#if OUTER\n#if A\n//a\n#endif\n" + CppBufferedWriter.REPLACEMENT + "\n//after\n#endif\n",
+                "Sibling blocks are kept"},
+            {"#if A\n" + error + "//dead code\n#if B\n//dead code\n#endif\n#endif\n//after\n",
+                CppBufferedWriter.REPLACEMENT + "\n//after\n",
+                "Code after error is removed"},
+            {"# ifdef A\n  #  error no\n# else\n//b\n# endif\n",
+                CppBufferedWriter.REPLACEMENT + "\n#if !(defined(A))\n//b\n# endif\n",
+                "Whitespace after #"},
         };
     }
     
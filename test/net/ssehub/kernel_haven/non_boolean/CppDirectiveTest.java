@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link CppDirective}.
+ *
+ * @author Adam
+ */
+public class CppDirectiveTest {
+    
+    /**
+     * Tests that all relevant directives are recognized.
+     */
+    @Test
+    public void testDirectives() {
+        assertClassified("#if A", CppDirective.IF);
+        assertClassified("#if(A)", CppDirective.IF);
+        assertClassified("#ifdef A", CppDirective.IFDEF);
+        assertClassified("#ifndef A", CppDirective.IFNDEF);
+        assertClassified("#elif A", CppDirective.ELIF);
+        assertClassified("#else", CppDirective.ELSE);
+        assertClassified("#endif // A", CppDirective.ENDIF);
+        assertClassified("#error message", CppDirective.ERROR);
+    }
+    
+    /**
+     * Tests that whitespace before and after the # is allowed.
+     */
+    @Test
+    public void testWhitespace() {
+        assertClassified("  #if A", CppDirective.IF);
+        assertClassified("# if A", CppDirective.IF);
+        assertClassified("\t#\tendif", CppDirective.ENDIF);
+        assertClassified(" #  else", CppDirective.ELSE);
+    }
+    
+    /**
+     * Tests that other lines are classified as {@link CppDirective#OTHER}.
+     */
+    @Test
+    public void testOther() {
+        assertClassified("", CppDirective.OTHER);
+        assertClassified("#", CppDirective.OTHER);
+        assertClassified("#define A 1", CppDirective.OTHER);
+        assertClassified("#iffy", CppDirective.OTHER);
+        assertClassified("#elsewhere", CppDirective.OTHER);
+        assertClassified("#IF A", CppDirective.OTHER);
+        assertClassified("int a; #if A", CppDirective.OTHER);
+        assertClassified("// #if A", CppDirective.OTHER);
+    }
+    
+    /**
+     * Tests {@link CppDirective#getEndOfKeyword(CharSequence)}.
+     */
+    @Test
+    public void testGetEndOfKeyword() {
+        assertThat(CppDirective.IF.getEndOfKeyword("#if A"), is(3));
+        assertThat(CppDirective.ELIF.getEndOfKeyword(" #  elif(A)"), is(8));
+    }
+    
+    /**
+     * Asserts that the {@link String} and the byte variant of classify() return the expected directive.
+     * 
+     * @param line The line to classify.
+     * @param expected The expected directive.
+     */
+    private static void assertClassified(String line, CppDirective expected) {
+        assertThat(line, CppDirective.classify(line), is(expected));
+        
+        byte[] bytes = ("x" + line + "\n").getBytes(StandardCharsets.ISO_8859_1);
+        assertThat(line, CppDirective.classify(bytes, 1, bytes.length - 1), is(expected));
+    }
+    
+}
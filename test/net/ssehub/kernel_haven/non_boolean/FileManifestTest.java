@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.AllTests;
+
+/**
+ * Tests the {@link FileManifest}.
+ *
+ * @author Adam
+ */
+public class FileManifestTest {
+    
+    private static final File OUT_FOLDER = new File(AllTests.TESTDATA, "nonBooleanPreparation/outDir");
+    
+    /**
+     * Tests that a written manifest can be read again.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        OUT_FOLDER.mkdirs();
+        
+        FileManifest manifest = new FileManifest("fingerprint");
+        manifest.put("a/b.c", new FileManifest.Entry(12, 34, "abcdef"));
+        manifest.put("with space.h", new FileManifest.Entry(0, 1, "012345"));
+        manifest.write(OUT_FOLDER);
+        
+        FileManifest read = FileManifest.read(OUT_FOLDER);
+        assertThat(read, notNullValue());
+        assertThat(read.getFingerprint(), is("fingerprint"));
+        assertThat(read.getPaths(), is(manifest.getPaths()));
+        assertThat(read.get("a/b.c").hasSameContent(manifest.get("a/b.c")), is(true));
+        assertThat(read.get("a/b.c").hasSameContent(manifest.get("with space.h")), is(false));
+        
+        FileManifest.delete(OUT_FOLDER);
+        assertThat(FileManifest.read(OUT_FOLDER), nullValue());
+    }
+    
+    /**
+     * Tests that the fingerprint depends on the values of the variables, constants and settings, but not on their
+     * order.
+     */
+    @Test
+    public void testFingerprint() {
+        Map<String, NonBooleanVariable> variables = new HashMap<>();
+        variables.put("A", new NonBooleanVariable("A", new HashSet<>(Arrays.asList(1L, 2L))));
+        variables.put("B", new NonBooleanVariable("B", new HashSet<>(Arrays.asList(2L, 1L))));
+        Map<String, Long> constants = new HashMap<>();
+        constants.put("C", 3L);
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("overlay", false);
+        settings.put("non_source_files", NonSourceFileStrategy.COPY);
+        
+        String fingerprint = FileManifest.createFingerprint(variables, constants, settings);
+        assertThat(FileManifest.createFingerprint(new HashMap<>(variables), new HashMap<>(constants),
+                new HashMap<>(settings)), is(fingerprint));
+        
+        constants.put("C", 4L);
+        assertThat(FileManifest.createFingerprint(variables, constants, settings), not(fingerprint));
+        
+        constants.put("C", 3L);
+        variables.put("B", new NonBooleanVariable("B", new HashSet<>(Arrays.asList(1L, 3L))));
+        assertThat(FileManifest.createFingerprint(variables, constants, settings), not(fingerprint));
+        
+        variables.put("B", new NonBooleanVariable("B", new HashSet<>(Arrays.asList(1L, 2L))));
+        assertThat(FileManifest.createFingerprint(variables, constants, settings), is(fingerprint));
+        settings.put("non_source_files", NonSourceFileStrategy.SKIP);
+        assertThat(FileManifest.createFingerprint(variables, constants, settings), not(fingerprint));
+    }
+    
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.AllTests;
+
+/**
+ * Tests the {@link HeuristicResultCache}.
+ *
+ * @author Adam
+ */
+public class HeuristicResultCacheTest {
+    
+    private static final File OUT_FOLDER = new File(AllTests.TESTDATA, "nonBooleanPreparation/outDir");
+    
+    private static final File CACHE_FILE = new File(OUT_FOLDER, "heuristic.cache");
+    
+    /**
+     * Tests that a written result can be read again with the same key, but not with a different key.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        OUT_FOLDER.mkdirs();
+        
+        Map<String, NonBooleanVariable> variables = new HashMap<>();
+        variables.put("A", new NonBooleanVariable("A", new long[] {-1, 2, 5}, false));
+        variables.put("B", new NonBooleanVariable("B", new long[0], true));
+        HeuristicResultCache.write(CACHE_FILE, "key", variables);
+        
+        Map<String, NonBooleanVariable> read = HeuristicResultCache.read(CACHE_FILE, "key");
+        assertThat(read, notNullValue());
+        assertThat(read.keySet(), is(variables.keySet()));
+        assertThat(read.get("A").getConstants(), is(new long[] {-1, 2, 5}));
+        assertThat(read.get("A").isInfinite(), is(false));
+        assertThat(read.get("B").isInfinite(), is(true));
+        
+        assertThat(HeuristicResultCache.read(CACHE_FILE, "other key"), nullValue());
+        
+        Files.write(CACHE_FILE.toPath(), new byte[] {1, 2, 3});
+        assertThat(HeuristicResultCache.read(CACHE_FILE, "key"), nullValue());
+        
+        Files.delete(CACHE_FILE.toPath());
+        assertThat(HeuristicResultCache.read(CACHE_FILE, "key"), nullValue());
+    }
+    
+    /**
+     * Tests that a cache file with corrupt counts is ignored, instead of failing.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testCorruptCounts() throws IOException {
+        OUT_FOLDER.mkdirs();
+        
+        Map<String, NonBooleanVariable> variables = new HashMap<>();
+        variables.put("A", new NonBooleanVariable("A", new long[] {1, 2}, false));
+        HeuristicResultCache.write(CACHE_FILE, "key", variables);
+        byte[] valid = Files.readAllBytes(CACHE_FILE.toPath());
+        
+        // header (8 bytes), key (2 + 3 bytes), number of variables (4 bytes), name (2 + 1 bytes), infinite flag
+        final int numVariablesOffset = 13;
+        final int numConstantsOffset = 21;
+        
+        for (int offset : new int[] {numVariablesOffset, numConstantsOffset}) {
+            for (int count : new int[] {-1, 3, Integer.MAX_VALUE}) {
+                ByteBuffer corrupt = ByteBuffer.wrap(valid.clone());
+                corrupt.putInt(offset, count);
+                Files.write(CACHE_FILE.toPath(), corrupt.array());
+                
+                assertThat(offset + " " + count, HeuristicResultCache.read(CACHE_FILE, "key"), nullValue());
+            }
+        }
+        
+        Files.write(CACHE_FILE.toPath(), valid);
+        assertThat(HeuristicResultCache.read(CACHE_FILE, "key").get("A").getConstants(), is(new long[] {1, 2}));
+    }
+    
+    /**
+     * Tests that the key depends on the source tree, the variable regex and the domain compaction.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testKey() throws IOException {
+        SourceTreeIndex inDir = SourceTreeIndex.create(new File(AllTests.TESTDATA, "nonBooleanPreparation/inDir"));
+        SourceTreeIndex scenarios = SourceTreeIndex.create(
+                new File(AllTests.TESTDATA, "nonBooleanPreparation/inDir/scenarioTests"));
+        Pattern regex = Pattern.compile("\\p{Alpha}+\\w*");
+        
+        String key = HeuristicResultCache.createKey(inDir, regex, false);
+        assertThat(HeuristicResultCache.createKey(inDir, Pattern.compile("\\p{Alpha}+\\w*"), false), is(key));
+        assertThat(HeuristicResultCache.createKey(inDir, Pattern.compile("CONFIG_\\w+"), false), not(key));
+        assertThat(HeuristicResultCache.createKey(inDir, regex, true), not(key));
+        assertThat(HeuristicResultCache.createKey(scenarios, regex, false), not(key));
+    }
+    
+}
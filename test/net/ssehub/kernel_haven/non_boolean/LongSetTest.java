@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link LongSet}.
+ *
+ * @author Adam
+ */
+public class LongSetTest {
+    
+    /**
+     * Tests adding and looking up values, including the value that marks empty slots.
+     */
+    @Test
+    public void testAddAndContains() {
+        LongSet set = new LongSet();
+        assertThat(set.isEmpty(), is(true));
+        
+        assertThat(set.add(3), is(true));
+        assertThat(set.add(-1), is(true));
+        assertThat(set.add(Long.MIN_VALUE), is(true));
+        assertThat(set.add(3), is(false));
+        assertThat(set.add(Long.MIN_VALUE), is(false));
+        
+        assertThat(set.size(), is(3));
+        assertThat(set.contains(3), is(true));
+        assertThat(set.contains(Long.MIN_VALUE), is(true));
+        assertThat(set.contains(4), is(false));
+        assertThat(set.toSortedArray(), is(new long[] {Long.MIN_VALUE, -1, 3}));
+    }
+    
+    /**
+     * Tests that the set grows correctly, by comparing it with a {@link TreeSet}.
+     */
+    @Test
+    public void testGrow() {
+        LongSet set = new LongSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextInt(5000) - 2500;
+            assertThat(set.add(value), is(expected.add(value)));
+        }
+        
+        long[] expectedArray = new long[expected.size()];
+        int i = 0;
+        for (Long value : expected) {
+            expectedArray[i++] = value;
+        }
+        assertThat(set.size(), is(expected.size()));
+        assertThat(set.toSortedArray(), is(expectedArray));
+    }
+    
+    /**
+     * Tests {@link LongSet#addAll(LongSet)}.
+     */
+    @Test
+    public void testAddAll() {
+        LongSet a = new LongSet(2);
+        a.add(1);
+        a.add(2);
+        LongSet b = new LongSet();
+        b.add(2);
+        b.add(Long.MIN_VALUE);
+        
+        a.addAll(b);
+        assertThat(a.toSortedArray(), is(new long[] {Long.MIN_VALUE, 1, 2}));
+    }
+    
+}
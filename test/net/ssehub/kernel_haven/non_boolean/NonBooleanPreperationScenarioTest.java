@@ -17,6 +17,9 @@ package net.ssehub.kernel_haven.non_boolean;
 
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
@@ -32,6 +35,7 @@ import net.ssehub.kernel_haven.config.DefaultSettings;
 import net.ssehub.kernel_haven.test_utils.FileContentsAssertion;
 import net.ssehub.kernel_haven.test_utils.PseudoVariabilityExtractor;
 import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.Util;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
 
 /**
@@ -44,6 +48,7 @@ public class NonBooleanPreperationScenarioTest {
     private static final File TESTDATA_FOLDER = new File(AllTests.TESTDATA, "nonBooleanPreparation");
     private static final File IN_FOLDER = new File(TESTDATA_FOLDER, "inDir/scenarioTests");
     private static final File OUT_FOLDER = new File(TESTDATA_FOLDER, "outDir/scenarioTests");
+    private static final File INCREMENTAL_IN_FOLDER = new File(TESTDATA_FOLDER, "outDir/incrementalIn");
     
     /**
      * Wipes the {@link #OUT_FOLDER} for testing.
@@ -67,11 +72,285 @@ public class NonBooleanPreperationScenarioTest {
     @Test
     public void testScenario1() throws SetUpException {
         NonBooleanPreperation preparator = new NonBooleanPreperation();
-        Configuration config = createConfig(
+        Configuration config = createScenario1Config();
+        preparator.run(config);
+        
+        assertScenario1Output();
+    }
+    
+    /**
+     * Tests that scenario 1 produces the same result if the files are processed by multiple threads.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testScenario1Parallel() throws SetUpException {
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.NUMBER_OF_THREADS, 4);
+        preparator.run(config);
+        
+        assertScenario1Output();
+    }
+    
+    /**
+     * Tests that scenario 1 produces the same result if each file is processed in its own virtual thread.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testScenario1VirtualThreads() throws SetUpException {
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.EXECUTION_MODE, ExecutionMode.VIRTUAL_THREADS);
+        config.setValue(NonBooleanSettings.MAX_OPEN_FILES, 2);
+        preparator.run(config);
+        
+        assertScenario1Output();
+        Assert.assertTrue(new File(OUT_FOLDER, "readme.txt").isFile());
+    }
+    
+    /**
+     * Tests that an {@link Error} thrown while copying a file with virtual threads fails the run.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test(expected = StackOverflowError.class, timeout = 10000)
+    public void testVirtualThreadsPropagateError() throws SetUpException {
+        NonBooleanPreperation preparator = new ErrorThrowingPreparation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.EXECUTION_MODE, ExecutionMode.VIRTUAL_THREADS);
+        config.setValue(NonBooleanSettings.MAX_OPEN_FILES, 2);
+        preparator.run(config);
+    }
+    
+    /**
+     * Tests that scenario 1 produces the same result if reading, transforming and writing are pipelined.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testScenario1Pipeline() throws SetUpException {
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.EXECUTION_MODE, ExecutionMode.PIPELINE);
+        config.setValue(NonBooleanSettings.NUMBER_OF_THREADS, 2);
+        config.setValue(NonBooleanSettings.QUEUE_CAPACITY, 1);
+        preparator.run(config);
+        
+        assertScenario1Output();
+        Assert.assertTrue(new File(OUT_FOLDER, "readme.txt").isFile());
+    }
+    
+    /**
+     * Tests that an {@link Error} thrown in a stage of the pipeline fails the run instead of leaving the other stages
+     * waiting forever.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test(expected = StackOverflowError.class, timeout = 10000)
+    public void testPipelinePropagatesError() throws SetUpException {
+        NonBooleanPreperation preparator = new ErrorThrowingPreparation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.EXECUTION_MODE, ExecutionMode.PIPELINE);
+        config.setValue(NonBooleanSettings.NUMBER_OF_THREADS, 2);
+        config.setValue(NonBooleanSettings.QUEUE_CAPACITY, 1);
+        preparator.run(config);
+    }
+    
+    /**
+     * Tests that the overlay mode only writes changed files and links all other files.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testScenario1Overlay() throws SetUpException {
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.OVERLAY, true);
+        preparator.run(config);
+        
+        Assert.assertFalse(Files.isSymbolicLink(new File(OUT_FOLDER, "scenario1.c").toPath()));
+        assertScenario1Output();
+        Assert.assertTrue(Files.isSymbolicLink(new File(OUT_FOLDER, "readme.txt").toPath()));
+    }
+    
+    /**
+     * Tests that a second incremental run on scenario 1 keeps the result of the first run.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testScenario1Incremental() throws SetUpException {
+        for (int i = 0; i < 2; i++) {
+            NonBooleanPreperation preparator = new NonBooleanPreperation();
+            Configuration config = createScenario1Config();
+            config.setValue(NonBooleanSettings.INCREMENTAL, true);
+            preparator.run(config);
+            
+            Assert.assertTrue(new File(OUT_FOLDER, FileManifest.FILE_NAME).isFile());
+            assertScenario1Output();
+        }
+    }
+    
+    /**
+     * Tests that an incremental run only processes the files that were added, changed or deleted since the previous
+     * run.
+     * @throws SetUpException If setup fails, should not happen.
+     * @throws IOException If creating or reading the files fails, should not happen.
+     */
+    @Test
+    public void testIncrementalChangedFiles() throws SetUpException, IOException {
+        // an old modification time, that a rewritten file can't have
+        final long oldTime = 1000000000000L;
+        
+        Util.clearFolder(INCREMENTAL_IN_FOLDER);
+        File changed = writeSource("changed.c", "#if A == 1\n// Code\n#endif\n");
+        File deleted = writeSource("sub/deleted.c", "#if A == 1\n// Code\n#endif\n");
+        writeSource("unchanged.c", "#if A == 0\n// Code\n#endif\n");
+        writeSource("readme.txt", "Unchanged non-source file\n");
+        
+        runIncremental();
+        File changedOut = new File(OUT_FOLDER, "changed.c");
+        File unchangedOut = new File(OUT_FOLDER, "unchanged.c");
+        File readmeOut = new File(OUT_FOLDER, "readme.txt");
+        Assert.assertTrue(new File(OUT_FOLDER, "sub/deleted.c").isFile());
+        for (File out : new File[] {changedOut, unchangedOut, readmeOut}) {
+            Assert.assertTrue(out.setLastModified(oldTime));
+        }
+        
+        // same size as before, so make sure that the modification time differs
+        Files.write(changed.toPath(), "#if A == 2\n// Code\n#endif\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(changed.setLastModified(changed.lastModified() + 2000));
+        Files.delete(deleted.toPath());
+        Files.delete(deleted.getParentFile().toPath());
+        writeSource("added.c", "#if A == 1\n// Code\n#endif\n");
+        
+        runIncremental();
+        
+        FileContentsAssertion.assertContents(changedOut, "#if defined(A_eq_2) \n// Code\n#endif\n");
+        Assert.assertNotEquals(oldTime, changedOut.lastModified());
+        
+        Assert.assertFalse(new File(OUT_FOLDER, "sub/deleted.c").exists());
+        Assert.assertFalse(new File(OUT_FOLDER, "sub").exists());
+        
+        FileContentsAssertion.assertContents(new File(OUT_FOLDER, "added.c"),
+                "#if defined(A_eq_1) \n// Code\n#endif\n");
+        
+        Assert.assertEquals(oldTime, unchangedOut.lastModified());
+        Assert.assertEquals(oldTime, readmeOut.lastModified());
+        FileContentsAssertion.assertContents(unchangedOut, "#if defined(A_eq_0) \n// Code\n#endif\n");
+    }
+    
+    /**
+     * Tests that changing a setting that affects the output makes an incremental run process all files again.
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    @Test
+    public void testIncrementalSettingChanged() throws SetUpException {
+        File readme = new File(OUT_FOLDER, "readme.txt");
+        
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createScenario1Config();
+        config.setValue(NonBooleanSettings.INCREMENTAL, true);
+        config.setValue(NonBooleanSettings.OVERLAY, true);
+        preparator.run(config);
+        Assert.assertTrue(Files.isSymbolicLink(readme.toPath()));
+        
+        preparator = new NonBooleanPreperation();
+        config = createScenario1Config();
+        config.setValue(NonBooleanSettings.INCREMENTAL, true);
+        preparator.run(config);
+        Assert.assertFalse(Files.isSymbolicLink(readme.toPath()));
+        Assert.assertTrue(readme.isFile());
+        
+        preparator = new NonBooleanPreperation();
+        config = createScenario1Config();
+        config.setValue(NonBooleanSettings.INCREMENTAL, true);
+        config.setValue(NonBooleanSettings.NON_SOURCE_FILES, NonSourceFileStrategy.SKIP);
+        preparator.run(config);
+        Assert.assertFalse(readme.exists());
+        assertScenario1Output();
+    }
+    
+    /**
+     * Writes a source file into {@link #INCREMENTAL_IN_FOLDER}.
+     * 
+     * @param path The path of the file, relative to {@link #INCREMENTAL_IN_FOLDER}.
+     * @param content The content of the file.
+     * 
+     * @return The written file.
+     * 
+     * @throws IOException If writing the file fails.
+     */
+    private static File writeSource(String path, String content) throws IOException {
+        File file = new File(INCREMENTAL_IN_FOLDER, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+    
+    /**
+     * Runs an incremental preparation of {@link #INCREMENTAL_IN_FOLDER}, with the variable <code>A</code> (0, 1, 2).
+     * 
+     * @throws SetUpException If setup fails, should not happen.
+     */
+    private void runIncremental() throws SetUpException {
+        NonBooleanPreperation preparator = new NonBooleanPreperation();
+        Configuration config = createConfig(INCREMENTAL_IN_FOLDER,
+            new FiniteIntegerVariable("A", "tristate", new int[] {0, 1, 2}));
+        config.setValue(NonBooleanSettings.INCREMENTAL, true);
+        preparator.run(config);
+    }
+    
+    /**
+     * Tests that non-source files are transferred according to {@link NonBooleanSettings#NON_SOURCE_FILES}.
+     * @throws SetUpException If setup fails, should not happen.
+     * @throws IOException If reading the files fails, should not happen.
+     */
+    @Test
+    public void testNonSourceFileStrategies() throws SetUpException, IOException {
+        File original = new File(IN_FOLDER, "readme.txt");
+        File copied = new File(OUT_FOLDER, "readme.txt");
+        
+        for (NonSourceFileStrategy strategy : NonSourceFileStrategy.values()) {
+            setUp();
+            NonBooleanPreperation preparator = new NonBooleanPreperation();
+            Configuration config = createConfig();
+            config.setValue(NonBooleanSettings.NON_SOURCE_FILES, strategy);
+            preparator.run(config);
+            
+            if (strategy == NonSourceFileStrategy.SKIP) {
+                Assert.assertFalse(strategy.name(), copied.exists());
+            } else {
+                Assert.assertArrayEquals(strategy.name(), Files.readAllBytes(original.toPath()),
+                        Files.readAllBytes(copied.toPath()));
+            }
+            Assert.assertTrue(strategy.name(), new File(OUT_FOLDER, "scenario1.c").isFile());
+        }
+    }
+    
+    /**
+     * Creates the {@link Configuration} for scenario 1, with the variables <code>A</code> (0, 1, 2) and
+     * <code>B</code> (0, 1).
+     * 
+     * @return The {@link Configuration} for scenario 1.
+     */
+    private Configuration createScenario1Config() {
+        return createConfig(
             new FiniteIntegerVariable("A", "tristate", new int[] {0, 1, 2}),
             new FiniteIntegerVariable("B", "bool", new int[] {0, 1}));
-        preparator.run(config);
+    }
+    
+    /**
+     * A {@link NonBooleanPreperation} that throws an {@link Error} while reading any source file.
+     */
+    private static class ErrorThrowingPreparation extends NonBooleanPreperation {
         
+        @Override
+        protected boolean continueReading(String line) {
+            throw new StackOverflowError();
+        }
+        
+    }
+    
+    /**
+     * Checks the prepared <code>scenario1.c</code> of scenario 1 in {@link #OUT_FOLDER}.
+     */
+    private static void assertScenario1Output() {
         FileContentsAssertion.assertContents(new File(OUT_FOLDER, "scenario1.c"), 
             "#if defined(B_eq_0) \n"
             + "#if (defined(A_eq_0)) || (defined(A_eq_1)) \n"
@@ -96,12 +375,25 @@ public class NonBooleanPreperationScenarioTest {
      * @return {@link CodeExtractorConfiguration}, which is needed for testing the {@link NonBooleanPreperation}.
      */
     private Configuration createConfig(VariabilityVariable... variables) {
+        return createConfig(IN_FOLDER, variables);
+    }
+    
+    /**
+     * Configures the {@link PipelineConfigurator} and creates the {@link Configuration} for the given source tree.
+     * 
+     * @param sourceTree The source tree to prepare.
+     * @param variables Should be <tt>null</tt> or empty if the preparation should be tested without a variability
+     *     model or the complete list of relevant variables.
+     * 
+     * @return {@link CodeExtractorConfiguration}, which is needed for testing the {@link NonBooleanPreperation}.
+     */
+    private Configuration createConfig(File sourceTree, VariabilityVariable... variables) {
         try {
             Configuration config = new TestConfiguration(new Properties());
             NonBooleanSettings.registerAllSettings(config);
             config.setValue(NonBooleanSettings.DESTINATION_DIR, OUT_FOLDER);
             config.setValue(NonBooleanSettings.VARIABLE_REGEX, Pattern.compile("\\p{Alpha}+\\w*"));
-            config.setValue(DefaultSettings.SOURCE_TREE, IN_FOLDER);
+            config.setValue(DefaultSettings.SOURCE_TREE, sourceTree);
             
             boolean usesVarModel = null != variables && variables.length > 0;
             if (usesVarModel) {
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.AllTests;
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link PreprocessorConditionVisitor}.
+ *
+ * @author Adam
+ */
+public class PreprocessorConditionVisitorTest {
+    
+    private static final File TREE = new File(AllTests.TESTDATA, "nonBooleanPreparation/outDir/conditionVisitor");
+    
+    private static final int NUM_FILES = 20;
+    
+    /**
+     * Creates a source tree with {@link #NUM_FILES} source files and one non-source file.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Before
+    public void createTree() throws IOException {
+        Util.clearFolder(TREE);
+        new File(TREE, "sub").mkdirs();
+        for (int i = 0; i < NUM_FILES; i++) {
+            String content = "#if A == " + i + "\nint a;\n#elif B > \\\n" + i + "\n#endif\n";
+            File dir = i % 2 == 0 ? TREE : new File(TREE, "sub");
+            Files.write(new File(dir, "file" + i + ".c").toPath(), content.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(new File(TREE, "readme.txt").toPath(), "#if C\n".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Visits the test tree with the given parallelism and returns all visited conditions, sorted.
+     * 
+     * @param parallelism The number of threads to use.
+     * 
+     * @return The sorted conditions, prefixed with the file name.
+     * 
+     * @throws IOException unwanted.
+     */
+    private List<String> visitTree(int parallelism) throws IOException {
+        List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+        new PreprocessorConditionVisitor() {
+            
+            @Override
+            public void visit(File file, String line) {
+                conditions.add(file.getName() + ": " + line);
+            }
+        }.visitAllFiles(TREE, parallelism);
+        
+        List<String> result = new ArrayList<>(conditions);
+        Collections.sort(result);
+        return result;
+    }
+    
+    /**
+     * Tests that the parallel mode visits the same conditions as the sequential mode.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testParallelVisitsAllConditions() throws IOException {
+        List<String> sequential = visitTree(1);
+        assertThat(sequential.size(), is(2 * NUM_FILES));
+        assertThat(sequential.contains("file3.c: #elif B > \\3"), is(true));
+        
+        assertThat(visitTree(4), is(sequential));
+        assertThat(visitTree(100), is(sequential));
+    }
+    
+    /**
+     * Tests that the conditions of one file are visited by a single thread, in the order of the file.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testConditionsOfOneFileInOneThread() throws IOException {
+        List<String> visits = Collections.synchronizedList(new ArrayList<>());
+        new PreprocessorConditionVisitor() {
+            
+            @Override
+            public void visit(File file, String line) {
+                visits.add(file.getName() + " " + Thread.currentThread().getName() + " " + line.substring(0, 3));
+            }
+        }.visitAllFiles(TREE, 4);
+        
+        for (int i = 0; i < NUM_FILES; i++) {
+            List<String> ofFile = new ArrayList<>();
+            for (String visit : visits) {
+                if (visit.startsWith("file" + i + ".c ")) {
+                    ofFile.add(visit);
+                }
+            }
+            assertThat(ofFile.size(), is(2));
+            assertThat(ofFile.get(0).endsWith(" #if"), is(true));
+            assertThat(ofFile.get(1).endsWith(" #el"), is(true));
+            assertThat(ofFile.get(0).split(" ")[1], is(ofFile.get(1).split(" ")[1]));
+        }
+    }
+    
+    /**
+     * Tests that an exception thrown in a worker thread is propagated to the caller.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testFailureInWorkerIsPropagated() throws IOException {
+        PreprocessorConditionVisitor visitor = new PreprocessorConditionVisitor() {
+            
+            @Override
+            public void visit(File file, String line) {
+                if (file.getName().equals("file7.c")) {
+                    throw new IllegalStateException("failure in " + file.getName());
+                }
+            }
+        };
+        
+        try {
+            visitor.visitAllFiles(TREE, 4);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("failure in file7.c"));
+        }
+    }
+    
+    /**
+     * Tests that {@link PreprocessorConditionVisitor#findConditions(byte[])} reports the positions and continuation
+     * spans of the conditions, for all kinds of line terminators.
+     */
+    @Test
+    public void testFindConditionsPositions() {
+        String content = "int a;\r\n  #if A \\\n  && B\r#else\n# elif C\n#ifdef D\n#if E \\";
+        List<PreprocessorCondition> conditions = PreprocessorConditionVisitor.findConditions(
+                content.getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(conditions.size(), is(3));
+        
+        PreprocessorCondition first = conditions.get(0);
+        assertThat(first.getText(), is("#if A \\  && B"));
+        assertThat(first.getLine(), is(2));
+        assertThat(first.getOffset(), is(8L));
+        assertThat(first.getLineCount(), is(2));
+        assertThat(first.getLength(), is("  #if A \\\n  && B".length()));
+        
+        PreprocessorCondition second = conditions.get(1);
+        assertThat(second.getText(), is("# elif C"));
+        assertThat(second.getLine(), is(5));
+        assertThat(second.getOffset(), is((long) content.indexOf("# elif")));
+        assertThat(second.getLineCount(), is(1));
+        assertThat(second.getLength(), is(8));
+        
+        // continuation at the end of the file
+        PreprocessorCondition third = conditions.get(2);
+        assertThat(third.getText(), is("#if E \\"));
+        assertThat(third.getLine(), is(7));
+        assertThat(third.getLineCount(), is(1));
+    }
+    
+    /**
+     * Tests that the batch callback is called once per source file with all conditions of the file, and that the
+     * text of the conditions is the same as in the per-line callback.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testBatchCallback() throws IOException {
+        List<String> batches = Collections.synchronizedList(new ArrayList<>());
+        List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+        new PreprocessorConditionVisitor() {
+            
+            @Override
+            public void visitConditions(File file, List<PreprocessorCondition> fileConditions) {
+                batches.add(file.getName());
+                for (PreprocessorCondition condition : fileConditions) {
+                    conditions.add(file.getName() + ": " + condition.getText());
+                    assertThat(condition.getLine(), is(condition.getText().startsWith("#if") ? 1 : 3));
+                    assertThat(condition.getLineCount(), is(condition.getText().startsWith("#if") ? 1 : 2));
+                }
+            }
+        }.visitAllFiles(TREE, 4);
+        
+        assertThat(batches.size(), is(NUM_FILES));
+        Collections.sort(conditions);
+        assertThat(conditions, is(visitTree(1)));
+    }
+    
+    /**
+     * Tests that an invalid parallelism is rejected.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() throws IOException {
+        new PreprocessorConditionVisitor() {
+            
+            @Override
+            public void visit(File file, String line) {
+                // not called
+            }
+        }.visitFiles(Arrays.asList(TREE), 0);
+    }
+    
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ReplacementCache}.
+ *
+ * @author Adam
+ */
+public class ReplacementCacheTest {
+    
+    /**
+     * Tests that {@link ReplacementCache#normalize(String)} canonicalizes whitespace.
+     */
+    @Test
+    public void testNormalize() {
+        assertThat(ReplacementCache.normalize("#if A"), is("#if A"));
+        assertThat(ReplacementCache.normalize("  #if   A  ==\t1 "), is("#if A == 1"));
+        assertThat(ReplacementCache.normalize("#if\tA"), is("#if A"));
+        assertThat(ReplacementCache.normalize("#if(A)"), is("#if(A)"));
+        assertThat(ReplacementCache.normalize("# if A"), is("#if A"));
+        assertThat(ReplacementCache.normalize("  #  elif(A)"), is("#elif(A)"));
+        assertThat(ReplacementCache.normalize(""), is(""));
+    }
+    
+    /**
+     * Tests that hits and misses are counted.
+     */
+    @Test
+    public void testHitsAndMisses() {
+        ReplacementCache cache = new ReplacementCache(100);
+        assertThat(cache.get("#if A"), nullValue());
+        cache.put("#if A", "#if defined(A)");
+        assertThat(cache.get("#if A"), is("#if defined(A)"));
+        assertThat(cache.get("#if A"), is("#if defined(A)"));
+        
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getEvictions(), is(0L));
+    }
+    
+    /**
+     * Tests that the least recently used entry is evicted if the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        ReplacementCache cache = new ReplacementCache(1);
+        cache.put("#if A", "a");
+        cache.put("#if B", "b");
+        
+        assertThat(cache.get("#if A"), nullValue());
+        assertThat(cache.get("#if B"), is("b"));
+        assertThat(cache.getEvictions(), is(1L));
+    }
+    
+}
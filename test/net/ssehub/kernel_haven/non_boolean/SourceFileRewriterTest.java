@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.AllTests;
+
+/**
+ * Tests the {@link SourceFileRewriter}.
+ *
+ * @author Adam
+ */
+public class SourceFileRewriterTest {
+    
+    private static final File OUT_FOLDER = new File(AllTests.TESTDATA, "nonBooleanPreparation/outDir");
+    
+    /**
+     * Rewrites the given content with a replacer that marks all replaced lines.
+     * 
+     * @param content The content of the source file.
+     * 
+     * @return The rewritten content.
+     * 
+     * @throws IOException unwanted.
+     */
+    private static byte[] rewrite(byte[] content) throws IOException {
+        OUT_FOLDER.mkdirs();
+        File in = new File(OUT_FOLDER, "rewriterIn.c");
+        File out = new File(OUT_FOLDER, "rewriterOut.c");
+        Files.write(in.toPath(), content);
+        
+        SourceFileRewriter rewriter = new SourceFileRewriter();
+        rewriter.read(in);
+        rewriter.rewrite((line, lineNumber) -> "[" + lineNumber + ": " + line + "]");
+        rewriter.writeOutput(out);
+        
+        return Files.readAllBytes(out.toPath());
+    }
+    
+    /**
+     * Converts the given string to bytes.
+     * 
+     * @param content The string.
+     * 
+     * @return The bytes of the string.
+     */
+    private static byte[] bytes(String content) {
+        return content.getBytes(SourceFileRewriter.CHARSET);
+    }
+    
+    /**
+     * Tests that #if and #elif lines are replaced, and all other lines are kept.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testReplacement() throws IOException {
+        assertArrayEquals(bytes("int a;\n[2: #if A > 1]\n#ifdef B\n[4: #elif A == 2]\n#endif\n"),
+                rewrite(bytes("int a;\n  #if A > 1  \n#ifdef B\n#elif A == 2\n#endif\n")));
+    }
+    
+    /**
+     * Tests that continuations of #if lines are joined.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testContinuation() throws IOException {
+        assertArrayEquals(bytes("[1: #if A > 1 || B]\n[3: #if C]\nint a;\n"),
+                rewrite(bytes("#if A > 1 \\\n|| B\n#if C\nint a;\n")));
+    }
+    
+    /**
+     * Tests that line terminators are converted to \n and a missing final terminator is added.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testLineTerminators() throws IOException {
+        assertArrayEquals(bytes("a\nb\n\nc\n[5: #if A]\n"), rewrite(bytes("a\r\nb\r\rc\n#if A")));
+        assertArrayEquals(new byte[0], rewrite(new byte[0]));
+    }
+    
+    /**
+     * Tests that bytes that are not valid UTF-8 are kept exactly.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNonUtf8Bytes() throws IOException {
+        byte[] content = {'/', '/', ' ', (byte) 0xE4, (byte) 0xFF, (byte) 0xC3, '\n', '#', 'i', 'f', ' ', 'A', ' ',
+            '/', '*', (byte) 0xFE, '*', '/', '\n'};
+        
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(content, 0, 7);
+        expected.write(bytes("[2: #if A /*"));
+        expected.write(0xFE);
+        expected.write(bytes("*/]\n"));
+        
+        assertArrayEquals(expected.toByteArray(), rewrite(content));
+    }
+    
+    /**
+     * Tests that {@link SourceFileRewriter#isOutputUnchanged()} detects whether the rewriting changed anything.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testIsOutputUnchanged() throws IOException {
+        OUT_FOLDER.mkdirs();
+        File in = new File(OUT_FOLDER, "rewriterIn.c");
+        SourceFileRewriter rewriter = new SourceFileRewriter();
+        
+        Files.write(in.toPath(), bytes("#if A\nint a;\n#endif\n"));
+        rewriter.read(in);
+        rewriter.rewrite((line, lineNumber) -> line);
+        assertThat(rewriter.isOutputUnchanged(), is(true));
+        
+        rewriter.rewrite((line, lineNumber) -> "#if defined(A)");
+        assertThat(rewriter.isOutputUnchanged(), is(false));
+        
+        Files.write(in.toPath(), bytes("#if A\r\n"));
+        rewriter.read(in);
+        rewriter.rewrite((line, lineNumber) -> line);
+        assertThat(rewriter.isOutputUnchanged(), is(false));
+    }
+    
+    /**
+     * Tests the detection of #error lines.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testContainsErrorDirective() throws IOException {
+        OUT_FOLDER.mkdirs();
+        File in = new File(OUT_FOLDER, "rewriterIn.c");
+        SourceFileRewriter rewriter = new SourceFileRewriter();
+        
+        Files.write(in.toPath(), bytes("#if A\n  # error no\n#endif"));
+        rewriter.read(in);
+        assertThat(rewriter.containsErrorDirective(), is(true));
+        
+        Files.write(in.toPath(), bytes("#if A\n#ERROR no\n#endif"));
+        rewriter.read(in);
+        assertThat(rewriter.containsErrorDirective(), is(false));
+        
+        Files.write(in.toPath(), bytes("#if A\n// #error no\n#endif"));
+        rewriter.read(in);
+        assertThat(rewriter.containsErrorDirective(), is(false));
+    }
+    
+}
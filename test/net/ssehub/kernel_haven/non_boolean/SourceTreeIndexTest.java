@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.non_boolean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.AllTests;
+import net.ssehub.kernel_haven.util.Util;
+
+/**
+ * Tests the {@link SourceTreeIndex}.
+ *
+ * @author Adam
+ */
+public class SourceTreeIndexTest {
+    
+    private static final File TREE = new File(AllTests.TESTDATA, "nonBooleanPreparation/outDir/sourceTreeIndex");
+    
+    /**
+     * Tests that all directories and files of a nested tree are found, with parents before their children.
+     * 
+     * @throws IOException unwanted.
+     */
+    @Test
+    public void testNestedTree() throws IOException {
+        Util.clearFolder(TREE);
+        new File(TREE, "a/b").mkdirs();
+        Files.write(new File(TREE, "a/b/c.c").toPath(), "int c;\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(TREE, "a/d.txt").toPath(), "d".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(TREE, "e.h").toPath(), new byte[0]);
+        
+        SourceTreeIndex index = SourceTreeIndex.create(TREE);
+        
+        List<String> directories = new ArrayList<>();
+        for (SourceTreeIndex.Entry entry : index.getDirectories()) {
+            assertThat(entry.isDirectory(), is(true));
+            directories.add(entry.getRelativePath().replace(File.separatorChar, '/'));
+        }
+        assertThat(directories, is(Arrays.asList("a", "a/b")));
+        
+        List<String> files = new ArrayList<>();
+        for (SourceTreeIndex.Entry entry : index.getFiles()) {
+            assertThat(entry.isDirectory(), is(false));
+            assertThat(entry.getSize(), is(entry.getFile().length()));
+            files.add(entry.getRelativePath().replace(File.separatorChar, '/'));
+        }
+        Collections.sort(files);
+        assertThat(files, is(Arrays.asList("a/b/c.c", "a/d.txt", "e.h")));
+        
+        assertThat(index.getSourceFiles().size(), is(2));
+    }
+    
+}
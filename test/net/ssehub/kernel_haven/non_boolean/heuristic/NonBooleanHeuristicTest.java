@@ -19,6 +19,9 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
@@ -231,5 +234,164 @@ public class NonBooleanHeuristicTest {
         
         assertThat(result.size(), is(1));
     }
+    
+    /**
+     * Tests that comparisons with the constant on the left side are detected correctly.
+     */
+    @Test
+    public void testConstantOnLeftSide() {
+        heuristic.addSingleCppLine("#if 3 < VAR_A && -2 >= VAR_B");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A"), notNullValue());
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {4}));
+        assertThat(result.get("VAR_B"), notNullValue());
+        assertThat(result.get("VAR_B").getConstants(), is(new long[] {-2}));
+        
+        assertThat(result.size(), is(2));
+    }
+    
+    /**
+     * Tests that operators directly after a constant with a suffix are handled correctly.
+     */
+    @Test
+    public void testNoWhitespaceAroundOperators() {
+        heuristic.addSingleCppLine("#if VAR_A==3UL||VAR_B>=-1||VAR_C<<2");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {3}));
+        assertThat(result.get("VAR_B").getConstants(), is(new long[] {-1}));
+        
+        assertThat(result.size(), is(2));
+    }
+    
+    /**
+     * Tests that a minus after an operand is not treated as the sign of the constant.
+     */
+    @Test
+    public void testBinaryMinus() {
+        heuristic.addSingleCppLine("#if (VAR_A -1 < VAR_B) || VAR_C == 2-1");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_B"), notNullValue());
+        assertThat(result.get("VAR_B").getConstants(), is(new long[] {2}));
+        assertThat(result.get("VAR_C").getConstants(), is(new long[] {2}));
+        
+        assertThat(result.size(), is(2));
+    }
+    
+    /**
+     * Tests that constants that are too large are ignored.
+     */
+    @Test
+    public void testTooLargeConstant() {
+        heuristic.addSingleCppLine("#if VAR_A == 99999999999999999999 || VAR_A == 1");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {1}));
+        assertThat(result.size(), is(1));
+    }
+    
+    /**
+     * Tests that values that no comparison can distinguish are merged if the domains are compacted.
+     */
+    @Test
+    public void testCompactDomains() {
+        heuristic.setCompactDomains(true);
+        heuristic.addSingleCppLine("#if defined(VAR_A) && VAR_A < 5");
+        heuristic.addSingleCppLine("#elif (VAR_A > 2)");
+        heuristic.addSingleCppLine("#if VAR_B == 1 || VAR_B == 2 || VAR_B >= 5");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {3}));
+        assertThat(result.get("VAR_B").getConstants(), is(new long[] {1, 2, 5}));
+        assertThat(result.size(), is(2));
+    }
+    
+    /**
+     * Tests that the domains are not compacted by default.
+     */
+    @Test
+    public void testNoCompactionByDefault() {
+        heuristic.addSingleCppLine("#if VAR_A < 5 || VAR_A > 2");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {3, 4}));
+    }
+    
+    /**
+     * Tests that variables that are used outside of a simple comparison are not compacted.
+     */
+    @Test
+    public void testNoCompactionForOtherUses() {
+        heuristic.setCompactDomains(true);
+        heuristic.addSingleCppLine("#if VAR_A < 5 || VAR_A > 2 || VAR_A + 1 == 4");
+        heuristic.addSingleCppLine("#if VAR_B < 5 || 1 + VAR_B > 2");
+        heuristic.addSingleCppLine("#if VAR_C < 5 || VAR_C > 2 || VAR_C");
+        heuristic.addSingleCppLine("#if VAR_D < 5 || VAR_D > 2 || VAR_D == VAR_E");
+        
+        Map<String, NonBooleanVariable> result = heuristic.getResult();
+        
+        assertThat(result.get("VAR_A").getConstants(), is(new long[] {3, 4}));
+        assertThat(result.get("VAR_B").getConstants(), is(new long[] {3, 4}));
+        assertThat(result.get("VAR_C").getConstants(), is(new long[] {3, 4}));
+        assertThat(result.get("VAR_D").getConstants(), is(new long[] {3, 4}));
+    }
+    
+    /**
+     * Tests that scanning the source files in parallel produces the same result as the sequential scan.
+     * 
+     * @throws IOException unwanted.
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testParallelScan() throws IOException, SetUpException {
+        File sourceTree = new File("testdata/nonBooleanPreparation/inDir");
+        heuristic.addAllSourceFiles(sourceTree);
+        Map<String, NonBooleanVariable> sequential = heuristic.getResult();
+        
+        createHeuristic();
+        heuristic.setNumberOfThreads(4);
+        heuristic.addAllSourceFiles(sourceTree);
+        Map<String, NonBooleanVariable> parallel = heuristic.getResult();
+        
+        assertThat(sequential.isEmpty(), is(false));
+        assertThat(parallel.keySet(), is(sequential.keySet()));
+        for (Map.Entry<String, NonBooleanVariable> entry : sequential.entrySet()) {
+            assertThat(parallel.get(entry.getKey()).getConstants(), is(entry.getValue().getConstants()));
+        }
+    }
+    
+    /**
+     * Tests that the partial results of all threads are merged if more files than threads are scanned.
+     * 
+     * @throws IOException unwanted.
+     * @throws SetUpException unwanted.
+     */
+    @Test
+    public void testParallelScanManyFiles() throws IOException, SetUpException {
+        File sourceFile = new File("testdata/nonBooleanPreparation/inDir/scenarioTests/scenario1.c");
+        heuristic.addSourceFiles(Collections.singletonList(sourceFile));
+        Map<String, NonBooleanVariable> sequential = heuristic.getResult();
+        
+        createHeuristic();
+        heuristic.setNumberOfThreads(3);
+        heuristic.addSourceFiles(Collections.nCopies(10, sourceFile));
+        heuristic.addSingleCppLine("#if OTHER == 7");
+        Map<String, NonBooleanVariable> parallel = heuristic.getResult();
+        
+        assertThat(parallel.get("OTHER").getConstants(), is(new long[] {7}));
+        parallel.remove("OTHER");
+        assertThat(parallel.keySet(), is(sequential.keySet()));
+        for (Map.Entry<String, NonBooleanVariable> entry : sequential.entrySet()) {
+            assertThat(parallel.get(entry.getKey()).getConstants(), is(entry.getValue().getConstants()));
+        }
+    }
 
 }
@@ -148,8 +148,8 @@ public class CppReplacerTest {
                 new Object[] {"#if (VAR_C != VAR_A)", "#if !(((defined(VAR_C_eq_0)) && (defined(VAR_A_eq_0))) || ((defined(VAR_C_eq_1)) && (defined(VAR_A_eq_1))))", "Var not equals Var (reveresed)"},
                 new Object[] {"#if (VAR_A < VAR_C)", "#if (defined(VAR_A_eq_0)) && (defined(VAR_C_eq_1))", "Var lt Var"},
                 new Object[] {"#if (VAR_C > VAR_A)", "#if (defined(VAR_A_eq_0)) && (defined(VAR_C_eq_1))", "Var gt Var"},
-                new Object[] {"#if (VAR_A <= VAR_C)", "#if (((defined(VAR_A_eq_0)) && (defined(VAR_C_eq_0))) || ((defined(VAR_A_eq_0)) && (defined(VAR_C_eq_1)))) || ((defined(VAR_A_eq_1)) && (defined(VAR_C_eq_1)))", "Var le Var"},
-                new Object[] {"#if (VAR_C >= VAR_A)", "#if (((defined(VAR_A_eq_0)) && (defined(VAR_C_eq_0))) || ((defined(VAR_A_eq_0)) && (defined(VAR_C_eq_1)))) || ((defined(VAR_A_eq_1)) && (defined(VAR_C_eq_1)))", "Var ge Var"},
+                new Object[] {"#if (VAR_A <= VAR_C)", "#if ((defined(VAR_A_eq_0)) && ((defined(VAR_C_eq_0)) || (defined(VAR_C_eq_1)))) || ((defined(VAR_A_eq_1)) && (defined(VAR_C_eq_1)))", "Var le Var"},
+                new Object[] {"#if (VAR_C >= VAR_A)", "#if ((defined(VAR_A_eq_0)) && ((defined(VAR_C_eq_0)) || (defined(VAR_C_eq_1)))) || ((defined(VAR_A_eq_1)) && (defined(VAR_C_eq_1)))", "Var ge Var"},
                 
                 new Object[] {"#if VAR_A + 10 == VAR_B", "#if 0", "Var equals Var with no overlap"},
                 
@@ -217,11 +217,39 @@ public class CppReplacerTest {
                 new Object[] {"#if -1 > VAR_A", "#if 0", "Var lt Literal out of Range (reversed)"},
                 new Object[] {"#if -1 >= VAR_A", "#if 0", "Var le Literal out of Range (reversed)"},
                 
+                /*
+                 * Comparisons that are decided by the bounds of the current values
+                 */
+                new Object[] {"#if VAR_A < 100000", "#if 1", "Var lt Literal above Range"},
+                new Object[] {"#if VAR_A >= 0", "#if 1", "Var ge Literal below Range"},
+                new Object[] {"#if 100000 > VAR_A", "#if 1", "Var lt Literal above Range (reversed)"},
+                new Object[] {"#if VAR_A / 3 == 0", "#if 1", "Var calculation (DIV) equals Literal for all values"},
+                new Object[] {"#if VAR_A * 2 > 4", "#if 0", "Var calculation (MUL) gt Literal above Range"},
+                new Object[] {"#if VAR_C < VAR_A + 2", "#if 1", "Var lt Var for all values"},
+                new Object[] {"#if VAR_A + 3 == VAR_C", "#if 0", "Var equals Var with no overlap of bounds"},
+                new Object[] {"#if VAR_A + 1", "#if 1", "Var without comparison, never 0"},
+                
                 /*
                  * Containing boolean operators &&, ||, !
                  */
                 new Object[] {"#if VAR_A == 1 || (!(VAR_B==1) && VAR_C==1)", "#if (defined(VAR_A_eq_1)) || ((!(defined(VAR_B_eq_1))) && (defined(VAR_C_eq_1)))", "Boolean Operators"},
                 
+                /*
+                 * Short-circuiting and simplification of boolean operators
+                 */
+                new Object[] {"#if 0 && VAR_A == 1", "#if 0", "Short-circuit AND"},
+                new Object[] {"#if 1 || unknown_function(VAR_A)", "#if 1", "Short-circuit OR skips errors"},
+                new Object[] {"#if VAR_A == 1 && 0", "#if 0", "AND with literal false"},
+                new Object[] {"#if 1 && VAR_A == 1", "#if defined(VAR_A_eq_1)", "AND with literal true"},
+                new Object[] {"#if VAR_A == 1 || 0", "#if defined(VAR_A_eq_1)", "OR with literal false"},
+                new Object[] {"#if !!defined(VAR_B)", "#if defined(VAR_B)", "Double negation"},
+                new Object[] {"#if defined(VAR_B) && defined(VAR_B)", "#if defined(VAR_B)", "Duplicate operand"},
+                new Object[] {"#if defined(VAR_B) && (defined(VAR_B) || VAR_A == 1)", "#if defined(VAR_B)", "Absorption"},
+                new Object[] {"#if VAR_A < 100000 && defined(VAR_B)", "#if defined(VAR_B)", "AND with comparison decided by bounds"},
+                new Object[] {"#if (VAR_A * 7 + 1) && defined(VAR_B)", "#if defined(VAR_B)", "AND with truth test decided by bounds"},
+                new Object[] {"#if (VAR_A + 1) || unknown_function(VAR_A)", "#if 1", "Short-circuit OR on truth test decided by bounds"},
+                new Object[] {"#if (VAR_A * 0) || defined(VAR_B)", "#if defined(VAR_B)", "OR with truth test that is always false"},
+                
                 /*
                  * Literal CMP_OP Literal
                  */
@@ -277,7 +305,7 @@ public class CppReplacerTest {
                 new Object[] {"#if VAR_A + 2 == 3", "#if defined(VAR_A_eq_1)", "Var calculation (ADD)"},
                 new Object[] {"#if VAR_A - 2 == 0", "#if defined(VAR_A_eq_2)", "Var calculation (SUB)"},
                 new Object[] {"#if VAR_A * 2 == 4", "#if defined(VAR_A_eq_2)", "Var calculation (MUL)"},
-                new Object[] {"#if VAR_A / 3 == 0", "#if ((defined(VAR_A_eq_0)) || (defined(VAR_A_eq_1))) || (defined(VAR_A_eq_2))", "Var calculation (DIV)"},
+                new Object[] {"#if VAR_A / 2 == 0", "#if (defined(VAR_A_eq_0)) || (defined(VAR_A_eq_1))", "Var calculation (DIV)"},
                 new Object[] {"#if VAR_A % 2 == 0", "#if (defined(VAR_A_eq_0)) || (defined(VAR_A_eq_2))", "Var calculation (MOD)"},
                 new Object[] {"#if VAR_A % 2 == 1", "#if defined(VAR_A_eq_1)", "Var calculation (MOD)"},
                 new Object[] {"#if -VAR_A == -1", "#if defined(VAR_A_eq_1)", "Var calculation (Unary MINUS)"},
@@ -20,15 +20,21 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import net.ssehub.kernel_haven.non_boolean.FiniteIntegerVariable;
 import net.ssehub.kernel_haven.non_boolean.InfiniteIntegerVariable;
+import net.ssehub.kernel_haven.non_boolean.replacer.VariableResult.Type;
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
@@ -185,4 +191,218 @@ public class ManualReplacerTest {
         assertThat(replacer.replaceCpp("#if defined(i(VAR_A))"), is("#if defined(VAR_A)"));
     }
     
+    /**
+     * Tests that a comparison between two variables groups the matching combinations per value of the left-hand side.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testJoinGroupsPerLeftValue() throws ExpressionFormatException {
+        NonBooleanReplacer replacer = new NonBooleanReplacer(CppReplacerTest.DEFAULT_VARS,
+                CppReplacerTest.DEFAULT_CONSTANTS);
+        
+        // VAR_A % 2 is 0 for VAR_A = 0 and VAR_A = 2
+        assertThat(replacer.replaceNonCpp("VAR_A % 2 == VAR_C"),
+                is("(((VAR_A_eq_0) || (VAR_A_eq_2)) && (VAR_C_eq_0)) || ((VAR_A_eq_1) && (VAR_C_eq_1))"));
+        assertThat(replacer.replaceNonCpp("VAR_A % 2 < VAR_B"),
+                is("(((VAR_A_eq_0) || (VAR_A_eq_2)) && ((VAR_B_eq_1) || (VAR_B_eq_2))) "
+                        + "|| ((VAR_A_eq_1) && (VAR_B_eq_2))"));
+    }
+    
+    /**
+     * Tests that {@link VariablesWithValues#sortedIndices(long[])} sorts stably, for different lengths.
+     */
+    @Test
+    public void testSortedIndices() {
+        Random random = new Random(42);
+        for (int length = 0; length < 70; length++) {
+            long[] values = new long[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = random.nextInt(10) - 5;
+            }
+            if (length > 0) {
+                values[length / 2] = Long.MIN_VALUE;
+            }
+            
+            int[] sorted = VariablesWithValues.sortedIndices(values);
+            assertThat(sorted.length, is(length));
+            for (int i = 1; i < length; i++) {
+                int previous = sorted[i - 1];
+                int current = sorted[i];
+                assertThat(values[previous] < values[current]
+                        || (values[previous] == values[current] && previous < current), is(true));
+            }
+        }
+    }
+    
+    /**
+     * Tests that chains of binary operators are stored as n-ary operators, but written as before.
+     */
+    @Test
+    public void testNaryOperatorsWrittenLeftDeep() {
+        VariableResult a = new VariableResult("A", Type.FINAL);
+        VariableResult b = new VariableResult("B", Type.FINAL);
+        VariableResult c = new VariableResult("C", Type.FINAL);
+        
+        Result chain = new BoolOr(new BoolOr(a, b), c);
+        assertThat(((NaryBoolResult) chain).getOperands().length, is(3));
+        assertThat(chain.toNonCppString(), is("((A) || (B)) || (C)"));
+        assertThat(chain, is(BoolOr.of(Arrays.asList(a, b, c))));
+        
+        // the right side is not flattened, as it is written differently
+        Result rightNested = new BoolAnd(a, new BoolAnd(b, c));
+        assertThat(((NaryBoolResult) rightNested).getOperands().length, is(2));
+        assertThat(rightNested.toNonCppString(), is("(A) && ((B) && (C))"));
+        
+        assertThat(new BoolNot(new BoolAnd(new BoolAnd(a, new BoolNot(b)), c)).toCppString(),
+                is("!(((defined(A)) && (!(defined(B)))) && (defined(C)))"));
+    }
+    
+    /**
+     * Tests that a long chain of <code>||</code> is evaluated into a single disjunction in linear time, without
+     * overflowing the call stack.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test(timeout = 10000)
+    public void testLongOrChain() throws ExpressionFormatException {
+        final int length = 100000;
+        
+        StringBuilder expression = new StringBuilder("#if defined(V0)");
+        StringBuilder expected = new StringBuilder("#if ");
+        for (int i = 1; i < length; i++) {
+            expression.append(" || defined(V").append(i).append(')');
+            expected.append('(');
+        }
+        expected.append("defined(V0)");
+        for (int i = 1; i < length; i++) {
+            expected.append(") || (defined(V").append(i).append("))");
+        }
+        
+        NonBooleanReplacer replacer = new NonBooleanReplacer(CppReplacerTest.DEFAULT_VARS,
+                CppReplacerTest.DEFAULT_CONSTANTS);
+        assertThat(replacer.replaceCpp(expression.toString()), is(expected.toString()));
+    }
+    
+    /**
+     * Tests that very deep {@link Result} trees are written without overflowing the call stack.
+     */
+    @Test
+    public void testSerializeDeepTree() {
+        final int depth = 100000;
+        
+        Result result = new VariableResult("A", Type.FINAL);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            result = new BoolNot(new BoolAnd(new VariableResult("B", Type.FINAL), result));
+            expected.append("!((B) && (");
+        }
+        expected.append('A');
+        for (int i = 0; i < depth; i++) {
+            expected.append("))");
+        }
+        
+        assertThat(result.toNonCppString(), is(expected.toString()));
+    }
+    
+    
+    /**
+     * Tests that later modifications of the collections passed to the setters have no effect on the replacer.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testSettersCopyCollections() throws ExpressionFormatException {
+        NonBooleanReplacer replacer = new NonBooleanReplacer(CppReplacerTest.DEFAULT_VARS,
+                CppReplacerTest.DEFAULT_CONSTANTS);
+        
+        Set<String> definedLikeFunctions = new HashSet<>();
+        definedLikeFunctions.add("something");
+        replacer.setDefinedLikeFunctions(definedLikeFunctions);
+        definedLikeFunctions.clear();
+        
+        Map<String, Long> constants = new HashMap<>();
+        constants.put("CONST_X", 3L);
+        replacer.setConstants(constants);
+        constants.put("CONST_X", 1L);
+        
+        assertThat(replacer.replaceCpp("#if something(VAR_A)"), is("#if defined(VAR_A)"));
+        assertThat(replacer.replaceNonCpp("VAR_A == CONST_X"), is("0"));
+    }
+    
+    /**
+     * Evaluates the given input with the given replacer. Inputs starting with <code>#</code> are passed to
+     * {@link NonBooleanReplacer#replaceCpp(String)}, inputs starting with <code>F:</code> to
+     * {@link NonBooleanReplacer#nonCppToFormula(String)}, and all others to
+     * {@link NonBooleanReplacer#replaceNonCpp(String)}.
+     * 
+     * @param replacer The replacer to use.
+     * @param input The input to evaluate.
+     * 
+     * @return The result, or "error" if the replacer throws an {@link ExpressionFormatException}.
+     */
+    private static String evaluate(NonBooleanReplacer replacer, String input) {
+        String result;
+        try {
+            if (input.startsWith("#")) {
+                result = replacer.replaceCpp(input);
+            } else if (input.startsWith("F:")) {
+                result = replacer.nonCppToFormula(input.substring(2)).toString();
+            } else {
+                result = replacer.replaceNonCpp(input);
+            }
+        } catch (ExpressionFormatException e) {
+            result = "error";
+        }
+        return result;
+    }
+    
+    /**
+     * Tests that a single replacer can be used by multiple threads at once. In particular, a concurrent
+     * {@link NonBooleanReplacer#replaceCpp(String)} must not make <code>defined</code> available in
+     * {@link NonBooleanReplacer#replaceNonCpp(String)}.
+     * 
+     * @throws InterruptedException unwanted.
+     */
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        NonBooleanReplacer replacer = new NonBooleanReplacer(CppReplacerTest.DEFAULT_VARS,
+                CppReplacerTest.DEFAULT_CONSTANTS);
+        
+        String[] inputs = {
+            "#if defined(VAR_A) && VAR_B + 1 > 2",
+            "defined(VAR_A)",
+            "VAR_A == UNKNOWN",
+            "#if UNKNOWN < 3 || VAR_D == 2",
+            "F:VAR_A * 2 == VAR_B + CONST_B",
+            "#if VAR_C",
+        };
+        List<String> expected = new ArrayList<>();
+        for (String input : inputs) {
+            expected.add(evaluate(replacer, input));
+        }
+        assertThat(expected.get(1), is("error"));
+        
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    int index = (i + offset) % inputs.length;
+                    String actual = evaluate(replacer, inputs[index]);
+                    if (!actual.equals(expected.get(index))) {
+                        failures.add(inputs[index] + " -> " + actual);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertThat(failures, is(Collections.emptyList()));
+    }
+    
 }